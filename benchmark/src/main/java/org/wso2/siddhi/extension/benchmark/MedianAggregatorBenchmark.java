@@ -0,0 +1,222 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.event.stream.StreamEvent;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.extension.median.MedianAggregator;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds stat:median the event chunks that Siddhi's windows would hand to the selector, one benchmark operation
+ * per arriving event:
+ * <ul>
+ * <li>length: the oldest event expires and the new one is added.</li>
+ * <li>time: zero to two events expire before the new one is added, keeping the window around its size.</li>
+ * <li>lengthBatch: events are held until the batch is full, then the previous batch expires, the aggregator is
+ * reset and the batch is added, all on the arrival that completes the batch.</li>
+ * </ul>
+ * The 'batch' engine is meant for lengthBatch windows and is very slow on large sliding windows, so narrow such
+ * runs with -p engine=exact,approx.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MedianAggregatorBenchmark {
+
+    @Param({"INT", "LONG", "FLOAT", "DOUBLE"})
+    public String type;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int windowSize;
+
+    @Param({"auto", "exact", "batch", "approx", "offheap"})
+    public String engine;
+
+    @Param({"length", "time", "lengthBatch"})
+    public String window;
+
+    private MedianAggregator aggregator;
+    private Object[] values;
+    private byte[] expiries;
+    private int mask;
+    private long head;
+    private long added;
+    private int pending;
+
+    private final StreamEvent current = event(ComplexEvent.Type.CURRENT);
+    private final StreamEvent expired = event(ComplexEvent.Type.EXPIRED);
+    private final StreamEvent reset = event(ComplexEvent.Type.RESET);
+    private final StreamEvent currentRun = event(ComplexEvent.Type.CURRENT);
+    private final StreamEvent expiredRun = event(ComplexEvent.Type.EXPIRED);
+
+    /**
+     * Runs the throughput in ops/s and then the sampled latency percentiles in us, unless a mode or time unit is
+     * given on the command line.
+     */
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (!commandLine.getBenchModes().isEmpty() || commandLine.getTimeUnit().hasValue()) {
+            new Runner(commandLine).run();
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(commandLine).mode(Mode.Throughput).timeUnit(TimeUnit.SECONDS)
+                .build()).run();
+        new Runner(new OptionsBuilder().parent(commandLine).mode(Mode.SampleTime).timeUnit(TimeUnit.MICROSECONDS)
+                .build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        Attribute.Type attributeType = Attribute.Type.valueOf(type);
+        aggregator = new MedianAggregator();
+        aggregator.initAggregator(new ExpressionExecutor[]{new EventValueExecutor(attributeType),
+                new ConstantExpressionExecutor(engine, Attribute.Type.STRING)}, new ExecutionPlanContext(), null);
+
+        int capacity = "lengthBatch".equals(window) ? 2 * windowSize : windowSize + windowSize / 4 + 16;
+        values = new Object[Integer.highestOneBit(capacity) << 1];
+        expiries = new byte[values.length];
+        mask = values.length - 1;
+        Random random = new Random(42);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = value(attributeType, random);
+            expiries[i] = (byte) random.nextInt(3);
+        }
+
+        head = 0;
+        added = 0;
+        pending = 0;
+        if (!"lengthBatch".equals(window)) {
+            current.setNext(null);
+            for (int i = 0; i < windowSize; i++) {
+                current.setOutputData(values[(int) (added++ & mask)], 0);
+                aggregator.process(current);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object event() {
+        if ("length".equals(window)) {
+            return slide(1);
+        } else if ("time".equals(window)) {
+            long size = added - head;
+            int count = expiries[(int) (added & mask)];
+            if (size > windowSize + windowSize / 10) {
+                count = 2;
+            } else if (size - count < windowSize - windowSize / 10) {
+                count = 0;
+            }
+            return slide(count);
+        }
+        return batch();
+    }
+
+    private Object slide(int count) {
+        for (int i = 0; i < count; i++) {
+            expired.setOutputData(values[(int) (head++ & mask)], 0);
+            expired.setNext(i == count - 1 ? current : expiredRun);
+            aggregator.process(expired);
+        }
+        current.setOutputData(values[(int) (added++ & mask)], 0);
+        current.setNext(null);
+        return aggregator.process(current);
+    }
+
+    private Object batch() {
+        if (++pending < windowSize) {
+            return null;
+        }
+        pending = 0;
+        for (; head < added; head++) {
+            expired.setOutputData(values[(int) (head & mask)], 0);
+            expired.setNext(head == added - 1 ? reset : expiredRun);
+            aggregator.process(expired);
+        }
+        reset.setNext(current);
+        aggregator.process(reset);
+        Object result = null;
+        for (int i = 0; i < windowSize; i++) {
+            current.setOutputData(values[(int) (added++ & mask)], 0);
+            current.setNext(i == windowSize - 1 ? null : currentRun);
+            result = aggregator.process(current);
+        }
+        return result;
+    }
+
+    private static StreamEvent event(ComplexEvent.Type type) {
+        StreamEvent event = new StreamEvent(0, 0, 1);
+        event.setType(type);
+        return event;
+    }
+
+    private static Object value(Attribute.Type type, Random random) {
+        double gaussian = random.nextGaussian();
+        switch (type) {
+            case INT:
+                return (int) Math.round(gaussian * 1000000);
+            case LONG:
+                return Math.round(gaussian * 1000000);
+            case FLOAT:
+                return (float) (gaussian * 1000);
+            default:
+                return gaussian * 1000;
+        }
+    }
+
+    /**
+     * Reads the value to aggregate from the first output attribute of the event.
+     */
+    private static final class EventValueExecutor implements ExpressionExecutor {
+
+        private final Attribute.Type type;
+
+        EventValueExecutor(Attribute.Type type) {
+            this.type = type;
+        }
+
+        public Object execute(ComplexEvent event) {
+            return event.getOutputData()[0];
+        }
+
+        public Attribute.Type getReturnType() {
+            return type;
+        }
+
+        public ExpressionExecutor cloneExecutor(String key) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+/**
+ * Exact window storage that picks the engine from what it observes. The window starts in a {@link CompactEngine},
+ * a sorted array for small windows that moves into a tree as it grows. Every {@link #EPOCH} operations the engine
+ * looks at the operations since the last look and moves the window to
+ * <ul>
+ * <li>a {@link SelectionBuffer} when it is read so rarely that selecting the median costs less than keeping the
+ * window sorted, as for batch windows read once per batch in 'lazy' mode,</li>
+ * <li>a {@link CountingEngine} when int or long values span a range not much wider than the window,</li>
+ * <li>back to a {@link CompactEngine} otherwise.</li>
+ * </ul>
+ * A move happens only when two looks in a row agree on it, so workloads at a threshold do not move back and forth.
+ */
+class AdaptiveEngine extends MedianEngine {
+
+    static final int EPOCH = 1024;
+    // selecting from the window on reads has to cost less than this many keys per operation
+    private static final int SELECTION_COST = 8;
+    // a read is counted as at least this many keys, what a selection pass costs however small the window is, so
+    // that windows read after every add and remove keep sorted
+    private static final int MIN_READ_COST = 32;
+    // a counting range may be this many times wider than the window, or as wide as the minimum, before it is dropped
+    private static final int RANGE_FACTOR = 4;
+    private static final int MIN_RANGE = 1024;
+
+    private MedianEngine current;
+    private Class<?> candidate;
+    private int operations;
+    private long readCost;
+    private long lowest = Long.MAX_VALUE;
+    private long highest = Long.MIN_VALUE;
+
+    AdaptiveEngine(KeyCodec codec) {
+        super(codec);
+        this.current = new CompactEngine(codec);
+    }
+
+    void add(long key) {
+        current.add(key);
+        if (key < lowest) {
+            lowest = key;
+        }
+        if (key > highest) {
+            highest = key;
+        }
+        if (++operations == EPOCH) {
+            adapt();
+        }
+    }
+
+    boolean remove(long key) {
+        boolean removed = current.remove(key);
+        if (++operations == EPOCH) {
+            adapt();
+        }
+        return removed;
+    }
+
+    int size() {
+        return current.size();
+    }
+
+    void clear() {
+        current.clear();
+        if (++operations == EPOCH) {
+            adapt();
+        }
+    }
+
+    double valueAt(int rank) {
+        countRead();
+        return current.valueAt(rank);
+    }
+
+    /**
+     * Reads the median from the engine holding the window, which the selection buffer finds in one pass.
+     */
+    double median() {
+        countRead();
+        return current.median();
+    }
+
+    double quantile(double q) {
+        countRead();
+        return current.quantile(q);
+    }
+
+    double medianAbsoluteDeviation() {
+        countRead();
+        return current.medianAbsoluteDeviation();
+    }
+
+    void writeTo(SnapshotOutput out) {
+        current.writeTo(out);
+    }
+
+    void readFrom(SnapshotInput in, int format) {
+        current.readFrom(in, format);
+    }
+
+    long estimatedBytes() {
+        return current.estimatedBytes();
+    }
+
+    MedianEngine active() {
+        return current.active();
+    }
+
+    void close() {
+        current.close();
+    }
+
+    /**
+     * Chooses the engine for the operations of the epoch that ended and moves the window when the previous epoch
+     * chose the same one.
+     */
+    private void adapt() {
+        long span = highest - lowest;
+        long widest = Math.min(CountingEngine.MAX_DETECTED_RANGE, Math.max(MIN_RANGE, (long) RANGE_FACTOR * size()));
+        // a counting engine that fell back to a compact one is compact
+        Class<?> holding = current.active() instanceof OrderStatisticTree ? CompactEngine.class :
+                current.active().getClass();
+        Class<?> choice;
+        if (readCost < (long) operations * SELECTION_COST) {
+            choice = SelectionBuffer.class;
+        } else if (highest < lowest) {
+            // nothing was added to tell the range by
+            choice = holding;
+        } else if ((codec == KeyCodec.INT || codec == KeyCodec.LONG) && span >= 0 && span < widest) {
+            choice = CountingEngine.class;
+        } else {
+            choice = CompactEngine.class;
+        }
+        if (choice == holding) {
+            candidate = null;
+        } else if (choice == candidate) {
+            move(choice == SelectionBuffer.class ? new SelectionBuffer(codec) :
+                    choice == CountingEngine.class ? new CountingEngine(codec) : new CompactEngine(codec));
+            candidate = null;
+        } else {
+            candidate = choice;
+        }
+        operations = 0;
+        readCost = 0;
+        lowest = Long.MAX_VALUE;
+        highest = Long.MIN_VALUE;
+    }
+
+    private void countRead() {
+        readCost += Math.max(current.size(), MIN_READ_COST);
+    }
+
+    private void move(MedianEngine engine) {
+        if (current.size() > 0) {
+            engine.restore(current.snapshot());
+        }
+        current = engine;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An exact engine with a memory budget. When its arrays grow past the budget the window is moved into a
+ * {@link LogHistogramSketch}, whose size does not depend on the number of values, and the median becomes
+ * approximate.
+ * <p>
+ * While degraded, the values added since are also kept in an exact engine, which is dropped and started afresh
+ * whenever it grows past half the budget. Removals take values out of both, a value equal to the one expiring
+ * serving as well for the median, so the exact engine always holds part of the window. Once it holds as many
+ * values as the sketch it holds the whole window, and the aggregator returns to the exact median in a new engine
+ * of the configured kind.
+ */
+class BudgetedEngine extends MedianEngine {
+
+    private static final Logger log = Logger.getLogger(BudgetedEngine.class);
+
+    private final Factory factory;
+    private final long budget;
+    private final double accuracy;
+    private final String owner;
+    private final MedianMetrics metrics;
+    private MedianEngine exact;
+    private LogHistogramSketch sketch;
+    private CompactEngine recent;
+
+    BudgetedEngine(Factory factory, long budget, double accuracy, String owner, MedianMetrics metrics) {
+        this(factory.create(), factory, budget, accuracy, owner, metrics);
+    }
+
+    private BudgetedEngine(MedianEngine exact, Factory factory, long budget, double accuracy, String owner,
+                           MedianMetrics metrics) {
+        super(exact.codec);
+        this.exact = exact;
+        this.factory = factory;
+        this.budget = budget;
+        this.accuracy = accuracy;
+        this.owner = owner;
+        this.metrics = metrics;
+    }
+
+    boolean isDegraded() {
+        return sketch != null;
+    }
+
+    void add(long key) {
+        if (sketch == null) {
+            exact.add(key);
+            if (exact.estimatedBytes() > budget) {
+                degrade();
+            }
+            return;
+        }
+        sketch.add(key);
+        recent.add(key);
+        if (recent.estimatedBytes() > budget / 2) {
+            recent = new CompactEngine(codec);
+        }
+    }
+
+    boolean remove(long key) {
+        if (sketch == null) {
+            return exact.remove(key);
+        }
+        if (!sketch.remove(key)) {
+            return false;
+        }
+        recent.remove(key);
+        if (recent.size() == sketch.count()) {
+            recover();
+        }
+        return true;
+    }
+
+    int size() {
+        return sketch != null ? sketch.size() : exact.size();
+    }
+
+    void clear() {
+        if (sketch != null) {
+            exact = factory.create();
+            sketch = null;
+            recent = null;
+            metrics.recovered();
+            return;
+        }
+        exact.clear();
+    }
+
+    long count() {
+        return sketch != null ? sketch.count() : exact.count();
+    }
+
+    double valueAt(int rank) {
+        return sketch != null ? sketch.valueAt(rank) : exact.valueAt(rank);
+    }
+
+    double valueAt(long rank) {
+        return sketch != null ? sketch.valueAt(rank) : exact.valueAt(rank);
+    }
+
+    double median() {
+        return sketch != null ? sketch.median() : exact.median();
+    }
+
+    double quantile(double q) {
+        return sketch != null ? sketch.quantile(q) : exact.quantile(q);
+    }
+
+    double medianAbsoluteDeviation() {
+        return sketch != null ? sketch.medianAbsoluteDeviation() : exact.medianAbsoluteDeviation();
+    }
+
+    void writeTo(SnapshotOutput out) {
+        if (sketch != null) {
+            sketch.writeTo(out);
+        } else {
+            exact.writeTo(out);
+        }
+    }
+
+    /**
+     * Reads an exact window into the exact engine, degrading when it does not fit, and a sketch as a degraded
+     * window of which no value is known exactly.
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format == LOG_HISTOGRAM) {
+            sketch = new LogHistogramSketch(codec, accuracy);
+            sketch.readFrom(in, format);
+            recent = new CompactEngine(codec);
+            if (exact != null) {
+                exact.close();
+                exact = null;
+            }
+            return;
+        }
+        exact.readFrom(in, format);
+        if (exact.estimatedBytes() > budget) {
+            degrade();
+        }
+    }
+
+    long estimatedBytes() {
+        return sketch != null ? sketch.estimatedBytes() + recent.estimatedBytes() : exact.estimatedBytes();
+    }
+
+    MedianEngine active() {
+        return sketch != null ? sketch : exact.active();
+    }
+
+    /**
+     * Closes the engines the window is held in, which are the sketch and the recent values once it degraded.
+     */
+    void close() {
+        if (exact != null) {
+            exact.close();
+        }
+        if (sketch != null) {
+            sketch.close();
+        }
+        if (recent != null) {
+            recent.close();
+        }
+    }
+
+    private void degrade() {
+        long bytes = exact.estimatedBytes();
+        sketch = new LogHistogramSketch(codec, accuracy);
+        sketch.restore(exact.snapshot());
+        exact.close();
+        exact = null;
+        recent = new CompactEngine(codec);
+        metrics.degraded();
+        log.warn("Median window of " + owner + " holds " + sketch.count() + " values in about " + bytes +
+                " bytes, over its memory budget of " + budget + " bytes, and continues with a median within " +
+                accuracy + " of the exact one");
+    }
+
+    private void recover() {
+        exact = factory.create();
+        exact.restore(recent.snapshot());
+        sketch = null;
+        recent = null;
+        metrics.recovered();
+        log.info("Median window of " + owner + " holds " + exact.size() + " values within its memory budget of " +
+                budget + " bytes again and continues with the exact median");
+    }
+
+    /**
+     * Creates an empty engine of the kind the window was configured with, which holds the window while it fits
+     * the budget.
+     */
+    interface Factory {
+        MedianEngine create();
+    }
+}
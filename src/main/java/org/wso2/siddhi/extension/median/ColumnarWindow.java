@@ -0,0 +1,225 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+import java.util.Arrays;
+
+/**
+ * Exact windows of several attributes whose values arrive and expire together, one row per event. While the window
+ * holds at most {@link CompactEngine#PROMOTE_SIZE} rows, the sorted values of all the columns share one array, one
+ * column after the other, and share its size and capacity, so a row costs a binary search and a shift per column
+ * and the medians are read at the same position of every column. A larger window moves each column into a
+ * {@link CompactEngine} of its own, and moves back once fewer than {@link CompactEngine#DEMOTE_SIZE} rows are left.
+ */
+final class ColumnarWindow {
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private final KeyCodec[] codecs;
+    private final int[] positions;
+    private long[] keys;
+    private int capacity = INITIAL_CAPACITY;
+    private int size;
+    private CompactEngine[] engines;
+
+    ColumnarWindow(KeyCodec[] codecs) {
+        this.codecs = codecs;
+        this.positions = new int[codecs.length];
+        this.keys = new long[codecs.length * INITIAL_CAPACITY];
+    }
+
+    void add(long[] row) {
+        if (engines == null && size == CompactEngine.PROMOTE_SIZE) {
+            promote();
+        }
+        if (engines != null) {
+            for (int column = 0; column < engines.length; column++) {
+                engines[column].add(row[column]);
+            }
+            size++;
+            return;
+        }
+        if (size == capacity) {
+            grow(capacity << 1);
+        }
+        for (int column = 0; column < codecs.length; column++) {
+            int start = column * capacity;
+            int index = Arrays.binarySearch(keys, start, start + size, row[column]);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            System.arraycopy(keys, index, keys, index + 1, start + size - index);
+            keys[index] = row[column];
+        }
+        size++;
+    }
+
+    /**
+     * Removes one occurrence of the row, leaving the window as it was and returning false when a column does not
+     * hold its value.
+     */
+    boolean remove(long[] row) {
+        if (engines != null) {
+            for (int column = 0; column < engines.length; column++) {
+                if (!engines[column].remove(row[column])) {
+                    for (int removed = 0; removed < column; removed++) {
+                        engines[removed].add(row[removed]);
+                    }
+                    return false;
+                }
+            }
+            if (--size < CompactEngine.DEMOTE_SIZE) {
+                demote();
+            }
+            return true;
+        }
+        for (int column = 0; column < codecs.length; column++) {
+            int start = column * capacity;
+            positions[column] = Arrays.binarySearch(keys, start, start + size, row[column]);
+            if (positions[column] < 0) {
+                return false;
+            }
+        }
+        for (int column = 0; column < codecs.length; column++) {
+            int start = column * capacity;
+            System.arraycopy(keys, positions[column] + 1, keys, positions[column],
+                    start + size - positions[column] - 1);
+        }
+        size--;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        if (engines != null) {
+            engines = null;
+            capacity = INITIAL_CAPACITY;
+            keys = new long[codecs.length * INITIAL_CAPACITY];
+        }
+        size = 0;
+    }
+
+    /**
+     * Writes the median of each column into the array, 0.0 for an empty window.
+     */
+    void medians(double[] medians) {
+        if (engines != null) {
+            for (int column = 0; column < engines.length; column++) {
+                medians[column] = engines[column].median();
+            }
+            return;
+        }
+        if (size == 0) {
+            Arrays.fill(medians, 0.0);
+            return;
+        }
+        int midPointA = size / 2;
+        for (int column = 0; column < codecs.length; column++) {
+            int start = column * capacity;
+            double median = codecs[column].decode(keys[start + midPointA]);
+            if (size % 2 == 0) {
+                median = (median + codecs[column].decode(keys[start + midPointA - 1])) / 2.0;
+            }
+            medians[column] = median;
+        }
+    }
+
+    /**
+     * Encodes each column as a median window snapshot of its own.
+     */
+    byte[][] snapshot() {
+        byte[][] snapshots = new byte[codecs.length][];
+        for (int column = 0; column < codecs.length; column++) {
+            if (engines != null) {
+                snapshots[column] = engines[column].snapshot();
+            } else {
+                SnapshotOutput out = new SnapshotOutput(16 + 3 * size);
+                out.writeByte(MedianEngine.SNAPSHOT_VERSION);
+                MedianEngine.writeSortedRuns(out, Arrays.copyOfRange(keys, column * capacity,
+                        column * capacity + size), size);
+                snapshots[column] = out.toByteArray();
+            }
+        }
+        return snapshots;
+    }
+
+    void restore(byte[][] snapshots) {
+        if (snapshots.length != codecs.length) {
+            throw new OperationNotSupportedException("Median window snapshot of " + snapshots.length + " columns " +
+                    "cannot be restored into a window of " + codecs.length + " columns");
+        }
+        CompactEngine[] restored = new CompactEngine[codecs.length];
+        for (int column = 0; column < codecs.length; column++) {
+            restored[column] = new CompactEngine(codecs[column]);
+            restored[column].restore(snapshots[column]);
+            if (restored[column].size() != restored[0].size()) {
+                throw new OperationNotSupportedException("Median window snapshot holds columns of different " +
+                        "sizes");
+            }
+        }
+        engines = restored;
+        size = restored[0].size();
+        if (size <= CompactEngine.PROMOTE_SIZE) {
+            demote();
+        }
+    }
+
+    private void grow(int newCapacity) {
+        long[] newKeys = new long[codecs.length * newCapacity];
+        for (int column = 0; column < codecs.length; column++) {
+            System.arraycopy(keys, column * capacity, newKeys, column * newCapacity, size);
+        }
+        keys = newKeys;
+        capacity = newCapacity;
+    }
+
+    private void promote() {
+        engines = new CompactEngine[codecs.length];
+        for (int column = 0; column < codecs.length; column++) {
+            engines[column] = new CompactEngine(codecs[column]);
+            for (int i = column * capacity; i < column * capacity + size; i++) {
+                engines[column].add(keys[i]);
+            }
+        }
+        keys = null;
+    }
+
+    /**
+     * Moves the columns back into the shared array, reading their keys from the sorted runs of their snapshots.
+     */
+    private void demote() {
+        capacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(size, 1)) << 1);
+        keys = new long[codecs.length * capacity];
+        for (int column = 0; column < codecs.length; column++) {
+            SnapshotInput in = MedianEngine.open(engines[column].snapshot());
+            in.readByte();
+            int index = column * capacity;
+            long key = 0;
+            for (long distinct = in.readVarLong(); distinct > 0; distinct--) {
+                key += in.readVarLong();
+                for (long count = in.readVarLong(); count > 0; count--) {
+                    keys[index++] = key;
+                }
+            }
+        }
+        engines = null;
+    }
+}
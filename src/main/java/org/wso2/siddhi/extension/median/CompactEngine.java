@@ -0,0 +1,202 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.Arrays;
+
+/**
+ * Exact window storage that costs in proportion to the distinct values of a window rather than to its length,
+ * for the many small windows of a high cardinality group by and for readings that repeat. Up to
+ * {@link #PROMOTE_SIZE} distinct keys are kept in a sorted array with the count of each, where a binary search and
+ * a shift of a few cache lines cost less than walking a tree. A window with more distinct keys is moved into an
+ * {@link OrderStatisticTree}, which also counts repeated keys once, and moved back once it has fewer than
+ * {@link #DEMOTE_SIZE}, so a window that hovers around the limit does not move on every event.
+ */
+class CompactEngine extends MedianEngine {
+
+    static final int PROMOTE_SIZE = 64;
+    static final int DEMOTE_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int distinct;
+    private int size;
+    private OrderStatisticTree tree;
+
+    CompactEngine(KeyCodec codec) {
+        super(codec);
+    }
+
+    void add(long key) {
+        if (tree != null) {
+            tree.add(key);
+            return;
+        }
+        int index = Arrays.binarySearch(keys, 0, distinct, key);
+        if (index >= 0) {
+            counts[index]++;
+            size++;
+            return;
+        }
+        if (distinct == PROMOTE_SIZE) {
+            tree = new OrderStatisticTree(codec);
+            tree.load(keys, counts, distinct);
+            keys = null;
+            counts = null;
+            tree.add(key);
+            return;
+        }
+        index = -index - 1;
+        if (distinct == keys.length) {
+            keys = Arrays.copyOf(keys, distinct << 1);
+            counts = Arrays.copyOf(counts, distinct << 1);
+        }
+        System.arraycopy(keys, index, keys, index + 1, distinct - index);
+        System.arraycopy(counts, index, counts, index + 1, distinct - index);
+        keys[index] = key;
+        counts[index] = 1;
+        distinct++;
+        size++;
+    }
+
+    boolean remove(long key) {
+        if (tree != null) {
+            if (!tree.remove(key)) {
+                return false;
+            }
+            if (tree.distinct() < DEMOTE_SIZE) {
+                demote();
+            }
+            return true;
+        }
+        int index = Arrays.binarySearch(keys, 0, distinct, key);
+        if (index < 0) {
+            return false;
+        }
+        if (--counts[index] == 0) {
+            System.arraycopy(keys, index + 1, keys, index, distinct - index - 1);
+            System.arraycopy(counts, index + 1, counts, index, distinct - index - 1);
+            distinct--;
+        }
+        size--;
+        return true;
+    }
+
+    int size() {
+        return tree != null ? tree.size() : size;
+    }
+
+    void clear() {
+        if (tree != null) {
+            tree = null;
+            keys = new long[INITIAL_CAPACITY];
+            counts = new int[INITIAL_CAPACITY];
+        }
+        distinct = 0;
+        size = 0;
+    }
+
+    double valueAt(int rank) {
+        if (tree != null) {
+            return tree.valueAt(rank);
+        }
+        if (rank < size) {
+            // walk from the nearer end of the window
+            if (rank < size / 2) {
+                for (int i = 0; i < distinct; i++) {
+                    rank -= counts[i];
+                    if (rank < 0) {
+                        return codec.decode(keys[i]);
+                    }
+                }
+            } else {
+                rank = size - 1 - rank;
+                for (int i = distinct - 1; i >= 0; i--) {
+                    rank -= counts[i];
+                    if (rank < 0) {
+                        return codec.decode(keys[i]);
+                    }
+                }
+            }
+        }
+        throw new IndexOutOfBoundsException("Rank " + rank + " is out of the window of size " + size());
+    }
+
+    /**
+     * Replaces the contents with the given distinct keys, in ascending order, and their counts.
+     */
+    void load(long[] runKeys, int[] runCounts, int runs) {
+        clear();
+        if (runs > PROMOTE_SIZE) {
+            tree = new OrderStatisticTree(codec);
+            tree.load(runKeys, runCounts, runs);
+            keys = null;
+            counts = null;
+            return;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, runs);
+        keys = Arrays.copyOf(runKeys, capacity);
+        counts = Arrays.copyOf(runCounts, capacity);
+        distinct = runs;
+        for (int i = 0; i < runs; i++) {
+            size += runCounts[i];
+        }
+    }
+
+    void writeTo(SnapshotOutput out) {
+        if (tree != null) {
+            tree.writeTo(out);
+            return;
+        }
+        out.writeByte(SORTED_RUNS);
+        out.writeVarLong(distinct);
+        long previous = 0;
+        for (int i = 0; i < distinct; i++) {
+            out.writeVarLong(keys[i] - previous);
+            out.writeVarLong(counts[i]);
+            previous = keys[i];
+        }
+    }
+
+    long estimatedBytes() {
+        if (tree != null) {
+            return tree.estimatedBytes();
+        }
+        return arrayBytes(keys.length, 8) + arrayBytes(counts.length, 4);
+    }
+
+    MedianEngine active() {
+        return tree != null ? tree : this;
+    }
+
+    void readFrom(SnapshotInput in, int format) {
+        tree = new OrderStatisticTree(codec);
+        tree.readFrom(in, format);
+        if (tree.distinct() <= PROMOTE_SIZE) {
+            demote();
+        }
+    }
+
+    private void demote() {
+        OrderStatisticTree from = tree;
+        tree = null;
+        long[] runKeys = new long[from.distinct()];
+        int[] runCounts = new int[from.distinct()];
+        from.copyRuns(runKeys, runCounts);
+        load(runKeys, runCounts, runKeys.length);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.Arrays;
+
+/**
+ * Exact window storage for int and long values of a small range. Each value in the range has a counter and a
+ * Fenwick tree over the counters finds the value of a rank in O(log range), so add and remove are O(1) and
+ * O(log range) and no memory is allocated per value.
+ * <p>
+ * The range is either declared, or grown around the values seen, doubling up to {@link #MAX_DETECTED_RANGE}
+ * values. A value outside a declared range, or one that would grow the detected range past that limit, moves the
+ * window into a {@link CompactEngine} for good, as does a value beyond +-2^62, which keeps the offsets within the
+ * range of a long.
+ */
+class CountingEngine extends MedianEngine {
+
+    static final int MAX_DETECTED_RANGE = 1 << 16;
+    static final int MAX_DECLARED_RANGE = 1 << 20;
+    static final long MAX_MAGNITUDE = 1L << 62;
+    private static final int INITIAL_RANGE = 64;
+
+    private final boolean declared;
+    private long min;
+    private int[] counts;
+    private int[] fenwick;
+    private int size;
+    private CompactEngine fallback;
+
+    /**
+     * Creates an engine that detects the range from the values.
+     */
+    CountingEngine(KeyCodec codec) {
+        super(codec);
+        this.declared = false;
+    }
+
+    /**
+     * Creates an engine for values from min to max, both included.
+     */
+    CountingEngine(KeyCodec codec, long min, long max) {
+        super(codec);
+        this.declared = true;
+        this.min = min;
+        this.counts = new int[(int) (max - min + 1)];
+        this.fenwick = new int[counts.length + 1];
+    }
+
+    void add(long key) {
+        if (fallback != null) {
+            fallback.add(key);
+            return;
+        }
+        if (key < -MAX_MAGNITUDE || key > MAX_MAGNITUDE) {
+            fallBack();
+            fallback.add(key);
+            return;
+        }
+        if (counts == null) {
+            min = key - INITIAL_RANGE / 2;
+            counts = new int[INITIAL_RANGE];
+            fenwick = new int[INITIAL_RANGE + 1];
+        }
+        long offset = key - min;
+        if (offset < 0 || offset >= counts.length) {
+            if (declared || !extendRange(key)) {
+                fallBack();
+                fallback.add(key);
+                return;
+            }
+            offset = key - min;
+        }
+        counts[(int) offset]++;
+        for (int i = (int) offset + 1; i < fenwick.length; i += i & -i) {
+            fenwick[i]++;
+        }
+        size++;
+    }
+
+    boolean remove(long key) {
+        if (fallback != null) {
+            return fallback.remove(key);
+        }
+        long offset = key - min;
+        if (counts == null || offset < 0 || offset >= counts.length || counts[(int) offset] == 0) {
+            return false;
+        }
+        counts[(int) offset]--;
+        for (int i = (int) offset + 1; i < fenwick.length; i += i & -i) {
+            fenwick[i]--;
+        }
+        size--;
+        return true;
+    }
+
+    int size() {
+        return fallback != null ? fallback.size() : size;
+    }
+
+    void clear() {
+        if (fallback != null) {
+            fallback.clear();
+        } else if (size > 0) {
+            Arrays.fill(counts, 0);
+            Arrays.fill(fenwick, 0);
+            size = 0;
+        }
+    }
+
+    double valueAt(int rank) {
+        if (fallback != null) {
+            return fallback.valueAt(rank);
+        }
+        if (rank >= size) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " is out of the window of size " + size);
+        }
+        // descend the Fenwick tree to the last position whose prefix count is not above the rank
+        int position = 0;
+        for (int step = Integer.highestOneBit(counts.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < fenwick.length && fenwick[next] <= rank) {
+                position = next;
+                rank -= fenwick[next];
+            }
+        }
+        return codec.decode(min + position);
+    }
+
+    void writeTo(SnapshotOutput out) {
+        if (fallback != null) {
+            fallback.writeTo(out);
+            return;
+        }
+        int distinct = 0;
+        for (int i = 0; counts != null && i < counts.length; i++) {
+            if (counts[i] > 0) {
+                distinct++;
+            }
+        }
+        out.writeByte(SORTED_RUNS);
+        out.writeVarLong(distinct);
+        long previous = 0;
+        for (int i = 0; distinct > 0 && i < counts.length; i++) {
+            if (counts[i] > 0) {
+                out.writeVarLong(min + i - previous);
+                out.writeVarLong(counts[i]);
+                previous = min + i;
+            }
+        }
+    }
+
+    long estimatedBytes() {
+        if (fallback != null) {
+            return fallback.estimatedBytes();
+        }
+        return counts == null ? 0 : arrayBytes(counts.length, 4) + arrayBytes(fenwick.length, 4);
+    }
+
+    MedianEngine active() {
+        return fallback != null ? fallback.active() : this;
+    }
+
+    /**
+     * Grows the detected range to hold the key, returning false when it would get too wide.
+     */
+    private boolean extendRange(long key) {
+        long newMin = Math.min(min, key);
+        long span = Math.max(min + counts.length - 1, key) - newMin + 1;
+        if (span > MAX_DETECTED_RANGE) {
+            return false;
+        }
+        int capacity = counts.length;
+        while (capacity < span) {
+            capacity <<= 1;
+        }
+        capacity = Math.min(capacity << 1, MAX_DETECTED_RANGE);
+        if (key < min) {
+            newMin = Math.max(key - (capacity - span) / 2, min + counts.length - capacity);
+        }
+        int[] newCounts = new int[capacity];
+        System.arraycopy(counts, 0, newCounts, (int) (min - newMin), counts.length);
+        counts = newCounts;
+        min = newMin;
+        fenwick = new int[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            fenwick[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                fenwick[parent] += fenwick[i];
+            }
+        }
+        return true;
+    }
+
+    private void fallBack() {
+        int distinct = 0;
+        for (int i = 0; counts != null && i < counts.length; i++) {
+            if (counts[i] > 0) {
+                distinct++;
+            }
+        }
+        long[] runKeys = new long[distinct];
+        int[] runCounts = new int[distinct];
+        for (int i = 0, run = 0; run < distinct; i++) {
+            if (counts[i] > 0) {
+                runKeys[run] = min + i;
+                runCounts[run++] = counts[i];
+            }
+        }
+        fallback = new CompactEngine(codec);
+        fallback.load(runKeys, runCounts, distinct);
+        counts = null;
+        fenwick = null;
+    }
+}
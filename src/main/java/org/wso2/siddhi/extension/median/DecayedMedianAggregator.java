@@ -0,0 +1,182 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Extension(
+        name = "decayedMedian",
+        namespace = "stat",
+        description = "Returns the median of the recent values of a stream without a window. Each value counts " +
+                "with a weight that halves every half-life of event time, and the median is the value at which " +
+                "the weights of the values up to it exceed half the total weight. Values are counted in " +
+                "logarithmic buckets as by the 'approx' engine of stat:median, so memory stays below 2 x 2048 " +
+                "buckets and each event costs O(log 2048) however long the query runs. It is meant for queries " +
+                "without a window: a window does not bound the values it counts, since the events the window " +
+                "expires are ignored, which is logged once, and values are only forgotten by decaying. Only the " +
+                "reset of a batch window clears them.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the median.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "halfLife",
+                        description = "The time in milliseconds after which a value counts half as much as a " +
+                                "value arriving now, e.g. 5 min.",
+                        type = {DataType.INT, DataType.LONG}),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the reported median, as for the 'approx' engine of " +
+                                "stat:median.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns the decayed median as a double, or 0.0 before the first value.",
+                type = {DataType.DOUBLE}),
+        examples = {
+                @Example(
+                        syntax = "from latencyStream" +
+                                "\nselect stat:decayedMedian(latency, 5 min) as recentMedian" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median latency with the weight of each latency " +
+                                "halving every 5 minutes, for every event since the query started."
+                )
+        }
+)
+public class DecayedMedianAggregator extends AttributeAggregator {
+
+    private static final Logger log = Logger.getLogger(DecayedMedianAggregator.class);
+
+    private DecayedSketch sketch;
+    private long timestamp;
+    private Object result = 0.0;
+    private boolean warned;
+
+    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
+                        ExecutionPlanContext executionPlanContext) {
+        if (expressionExecutors.length < 2 || expressionExecutors.length > 3) {
+            throw new OperationNotSupportedException("Decayed median aggregator has to have 2 or 3 parameters, " +
+                    "the value, the half-life and optionally the accuracy, currently " + expressionExecutors.length +
+                    " parameters provided");
+        }
+        Attribute.Type halfLifeType = expressionExecutors[1].getReturnType();
+        if (!(expressionExecutors[1] instanceof ConstantExpressionExecutor) ||
+                (halfLifeType != Attribute.Type.INT && halfLifeType != Attribute.Type.LONG)) {
+            throw new OperationNotSupportedException("Decayed median aggregator's half-life has to be a constant " +
+                    "int or long");
+        }
+        long halfLife = ((Number) ((ConstantExpressionExecutor) expressionExecutors[1]).getValue()).longValue();
+        if (halfLife <= 0) {
+            throw new OperationNotSupportedException("Decayed median aggregator's half-life has to be positive, " +
+                    "but found " + halfLife);
+        }
+        double accuracy = OrderStatisticAggregator.DEFAULT_ACCURACY;
+        if (expressionExecutors.length == 3) {
+            if (!(expressionExecutors[2] instanceof ConstantExpressionExecutor) ||
+                    !(((ConstantExpressionExecutor) expressionExecutors[2]).getValue() instanceof Number)) {
+                throw new OperationNotSupportedException("Decayed median aggregator's accuracy has to be a " +
+                        "constant number");
+            }
+            accuracy = ((Number) ((ConstantExpressionExecutor) expressionExecutors[2]).getValue()).doubleValue();
+            if (!(accuracy > 0 && accuracy < 1)) {
+                throw new OperationNotSupportedException("Decayed median accuracy has to be between 0 and 1, but " +
+                        "found " + accuracy);
+            }
+        }
+        this.sketch = new DecayedSketch(accuracy, halfLife);
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    /**
+     * Notes the event time, which sets the weight of the value.
+     */
+    public synchronized Object process(ComplexEvent event) {
+        timestamp = event.getTimestamp();
+        return super.process(event);
+    }
+
+    public Object processAdd(Object data) {
+        if (data == null) {
+            return result;
+        }
+        sketch.add(((Number) data).doubleValue(), timestamp);
+        result = OrderStatisticAggregator.box(sketch.median(), result);
+        return result;
+    }
+
+    public Object processAdd(Object[] data) {
+        return processAdd(data[0]);
+    }
+
+    public Object processRemove(Object data) {
+        if (!warned) {
+            warned = true;
+            log.warn("Decayed median aggregator ignores the events its window expires, the values are only " +
+                    "forgotten by decaying");
+        }
+        return result;
+    }
+
+    public Object processRemove(Object[] data) {
+        return processRemove(data[0]);
+    }
+
+    public Object reset() {
+        sketch.clear();
+        result = OrderStatisticAggregator.box(0.0, result);
+        return result;
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Result", result);
+        state.put("Window", sketch.snapshot());
+        return state;
+    }
+
+    public void restoreState(Map<String, Object> state) {
+        result = state.get("Result");
+        byte[] snapshot = (byte[]) state.get("Window");
+        if (snapshot != null) {
+            sketch.restore(snapshot);
+        }
+    }
+}
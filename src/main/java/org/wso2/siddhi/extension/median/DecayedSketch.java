@@ -0,0 +1,286 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+import java.util.Arrays;
+
+/**
+ * Bounded memory sketch of an unbounded stream in which each value counts with a weight that halves every
+ * half-life, so that its median follows the recent values. Values are counted in the logarithmic buckets of a
+ * {@link LogIndexMapping}, like those of {@link LogHistogramSketch}, and read back within the same relative
+ * accuracy.
+ * <p>
+ * The decay is applied forward: a value arriving at time t is added with weight 2^((t - landmark) / halfLife)
+ * instead of decaying every weight as time passes. Weights never change once added, so only arrivals move the
+ * median. Once the newest weights grow large all the weights are scaled down and the landmark moves to the
+ * present, which also drops the weights that decayed to nothing. The weights of each set of buckets are summed in
+ * a Fenwick tree, making adding a value and finding the median O(log k) in the number of buckets k.
+ */
+class DecayedSketch {
+
+    // half-lives after the landmark at which the weights are scaled down, far below overflowing a double
+    private static final int RESCALE_HALF_LIVES = 512;
+    // weights below this fraction of the total are dropped when rescaling
+    private static final double NEGLIGIBLE_WEIGHT = 0x1p-60;
+
+    private final LogIndexMapping mapping;
+    private final long halfLife;
+    private final double minIndexableValue;
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private double zeroWeight;
+    private long landmark;
+
+    DecayedSketch(double relativeAccuracy, long halfLife) {
+        this.mapping = new LogIndexMapping(relativeAccuracy);
+        this.halfLife = halfLife;
+        this.minIndexableValue = mapping.minIndexableValue();
+    }
+
+    void add(double value, long timestamp) {
+        if (!(totalWeight() > 0)) {
+            clear();
+            landmark = timestamp;
+        }
+        double halfLives = (double) (timestamp - landmark) / halfLife;
+        if (halfLives > RESCALE_HALF_LIVES) {
+            rescale(Math.pow(2, -halfLives));
+            landmark = timestamp;
+            halfLives = 0;
+        }
+        double weight = Math.pow(2, halfLives);
+        if (value > minIndexableValue) {
+            positive.add(mapping.index(value), weight);
+        } else if (value < -minIndexableValue) {
+            negative.add(mapping.index(-value), weight);
+        } else if (value == value) {
+            zeroWeight += weight;
+        } else {
+            positive.add(mapping.maxIndex(), weight);
+        }
+    }
+
+    void clear() {
+        positive.clear();
+        negative.clear();
+        zeroWeight = 0;
+    }
+
+    /**
+     * Returns the value at which the weights of the values up to it exceed half the total weight, or 0.0 when
+     * no value is left.
+     */
+    double median() {
+        double half = totalWeight() / 2;
+        if (!(half > 0)) {
+            return 0.0;
+        }
+        if (half < negative.total) {
+            return -mapping.value(negative.indexAt(negative.total - half));
+        }
+        half -= negative.total;
+        if (half < zeroWeight) {
+            return 0.0;
+        }
+        return mapping.value(positive.indexAt(half - zeroWeight));
+    }
+
+    /**
+     * Returns the number of buckets allocated, which never exceeds 2 x {@link SlidingBins#MAX_BINS}.
+     */
+    int bucketCount() {
+        return positive.weights.length + negative.weights.length;
+    }
+
+    /**
+     * Encodes the sketch as the accuracy, the half-life, the landmark and the zero weight followed by the range
+     * and weights of the positive and negative buckets.
+     */
+    byte[] snapshot() {
+        SnapshotOutput out = new SnapshotOutput(64 + 8 * bucketCount());
+        out.writeByte(MedianEngine.SNAPSHOT_VERSION);
+        out.writeByte(MedianEngine.DECAYED_HISTOGRAM);
+        out.writeDouble(mapping.relativeAccuracy());
+        out.writeVarLong(halfLife);
+        out.writeSignedVarLong(landmark);
+        out.writeDouble(zeroWeight);
+        positive.writeTo(out);
+        negative.writeTo(out);
+        return out.toByteArray();
+    }
+
+    void restore(byte[] snapshot) {
+        SnapshotInput in = MedianEngine.open(snapshot);
+        if (in.readByte() != MedianEngine.DECAYED_HISTOGRAM) {
+            throw new OperationNotSupportedException("Only a decayed median sketch can be restored into a decayed " +
+                    "median sketch");
+        }
+        double accuracy = in.readDouble();
+        long snapshotHalfLife = in.readVarLong();
+        if (accuracy != mapping.relativeAccuracy() || snapshotHalfLife != halfLife) {
+            throw new OperationNotSupportedException("Decayed median sketch of accuracy " + accuracy + " and " +
+                    "half-life " + snapshotHalfLife + " cannot be restored into a sketch of accuracy " +
+                    mapping.relativeAccuracy() + " and half-life " + halfLife);
+        }
+        clear();
+        landmark = in.readSignedVarLong();
+        zeroWeight = in.readDouble();
+        positive.readFrom(in);
+        negative.readFrom(in);
+    }
+
+    private double totalWeight() {
+        return negative.total + zeroWeight + positive.total;
+    }
+
+    private void rescale(double factor) {
+        double threshold = totalWeight() * factor * NEGLIGIBLE_WEIGHT;
+        zeroWeight *= factor;
+        if (zeroWeight < threshold) {
+            zeroWeight = 0;
+        }
+        positive.scale(factor, threshold);
+        negative.scale(factor, threshold);
+    }
+
+    /**
+     * Weights of the values in each bucket, with a Fenwick tree over them that is rebuilt whenever the buckets
+     * move in the arrays.
+     */
+    private static final class Bins extends SlidingBins {
+
+        private double[] weights = new double[0];
+        // one based, tree[i] sums the weights of the slots from i - (i & -i) up to i - 1
+        private double[] tree = new double[1];
+        private double total;
+
+        void add(int index, double weight) {
+            if (index < minIndex || index > maxIndex) {
+                extendRange(index);
+            }
+            int slot = slot(index);
+            weights[slot] += weight;
+            for (int i = slot + 1; i < tree.length; i += i & -i) {
+                tree[i] += weight;
+            }
+            total += weight;
+        }
+
+        void clear() {
+            Arrays.fill(weights, 0);
+            Arrays.fill(tree, 0);
+            total = 0;
+            clearRange();
+        }
+
+        /**
+         * Returns the lowest index at which the weights of the buckets up to and including it exceed the weight.
+         */
+        int indexAt(double weight) {
+            int position = 0;
+            for (int step = Integer.highestOneBit(weights.length); step > 0; step >>= 1) {
+                if (position + step < tree.length && tree[position + step] <= weight) {
+                    position += step;
+                    weight -= tree[position];
+                }
+            }
+            return Math.max(minIndex, Math.min(position + offset, maxIndex));
+        }
+
+        /**
+         * Multiplies the weights by the factor, dropping those below the threshold and narrowing the range to the
+         * buckets left.
+         */
+        void scale(double factor, double threshold) {
+            int low = Integer.MAX_VALUE;
+            int high = Integer.MIN_VALUE;
+            total = 0;
+            for (int index = minIndex; index <= maxIndex; index++) {
+                double weight = weights[index - offset] * factor;
+                if (weight < threshold) {
+                    weight = 0;
+                } else {
+                    low = Math.min(low, index);
+                    high = index;
+                }
+                weights[index - offset] = weight;
+                total += weight;
+            }
+            if (total == 0) {
+                clear();
+                return;
+            }
+            minIndex = low;
+            maxIndex = high;
+            rebuild();
+        }
+
+        boolean isEmpty() {
+            return total == 0;
+        }
+
+        int capacity() {
+            return weights.length;
+        }
+
+        void relayout(int capacity, int newOffset, int newMinIndex) {
+            double[] newWeights = new double[capacity];
+            for (int i = minIndex; i <= maxIndex && total > 0; i++) {
+                newWeights[Math.max(i, newMinIndex) - newOffset] += weights[i - offset];
+            }
+            weights = newWeights;
+            tree = new double[capacity + 1];
+            rebuild();
+        }
+
+        void fold(int newMinIndex) {
+            double folded = 0;
+            for (int i = minIndex; i < newMinIndex; i++) {
+                folded += weights[i - offset];
+                weights[i - offset] = 0;
+            }
+            weights[newMinIndex - offset] += folded;
+            rebuild();
+        }
+
+        void writeBucket(SnapshotOutput out, int slot) {
+            out.writeDouble(weights[slot]);
+        }
+
+        void readBucket(SnapshotInput in, int slot) {
+            weights[slot] = in.readDouble();
+            total += weights[slot];
+        }
+
+        void readFrom(SnapshotInput in) {
+            super.readFrom(in);
+            rebuild();
+        }
+
+        private void rebuild() {
+            Arrays.fill(tree, 0);
+            for (int i = 1; i < tree.length; i++) {
+                tree[i] += weights[i - 1];
+                int parent = i + (i & -i);
+                if (parent < tree.length) {
+                    tree[parent] += tree[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A window shared by all partition and group instances of one aggregator, for a median over all of them. Each
+ * thread appends its adds and removes to one of several striped buffers under the buffer's own lock, and a reader
+ * drains all buffers into the engine under the window's lock before reading the result, which it publishes.
+ * <p>
+ * Eager readers, which read after every event, never wait for the window's lock: one that finds another reader
+ * draining returns the published result instead, which may miss the latest events of other threads. Only when its
+ * own stripe holds more than {@link #MAX_PENDING} operations does it wait to drain them, which bounds how far
+ * behind the window and its result can fall. Lazy readers always wait and read the whole window.
+ * <p>
+ * A removal can be drained before the add it undoes when the two came from different threads. Since windows
+ * only expire values they hold, such a removal is kept and retried on the next drain, by which time the add
+ * has been appended.
+ */
+final class GlobalWindow {
+
+    static final int MAX_PENDING = 4096;
+
+    private final MedianEngine engine;
+    private final Stripe[] stripes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long[] removals = new long[16];
+    private int removalCount;
+    private boolean changed = true;
+    private volatile Object result;
+
+    GlobalWindow(MedianEngine engine) {
+        this.engine = engine;
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void add(long key) {
+        stripe().append(key, false);
+    }
+
+    void remove(long key) {
+        stripe().append(key, true);
+    }
+
+    /**
+     * Drains the buffers and returns the reader's result for the whole window. Without wait, a reader that finds
+     * another one draining returns the published result instead, unless its stripe fell too far behind.
+     */
+    Object read(OrderStatisticAggregator reader, boolean wait) {
+        if (wait) {
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            if (stripe().pending() <= MAX_PENDING) {
+                return result;
+            }
+            lock.lock();
+        }
+        try {
+            for (Stripe stripe : stripes) {
+                stripe.drain(this);
+            }
+            int retained = 0;
+            for (int i = 0; i < removalCount; i++) {
+                if (engine.remove(removals[i])) {
+                    changed = true;
+                } else {
+                    removals[retained++] = removals[i];
+                }
+            }
+            removalCount = retained;
+            if (changed) {
+                result = reader.result(engine, result);
+                changed = false;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            engine.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the class of the engine holding the drained part of the window, for monitoring from another
+     * thread like the size and footprint below.
+     */
+    Class<?> activeEngine() {
+        lock.lock();
+        try {
+            return engine.active().getClass();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long count() {
+        lock.lock();
+        try {
+            return engine.count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long estimatedBytes() {
+        lock.lock();
+        try {
+            return engine.estimatedBytes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Stripe stripe() {
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    private void removeLater(long key) {
+        if (removalCount == removals.length) {
+            removals = Arrays.copyOf(removals, removalCount << 1);
+        }
+        removals[removalCount++] = key;
+    }
+
+    /**
+     * Operations appended by the threads that map to one stripe, in the order they were appended.
+     */
+    private static final class Stripe {
+        private long[] keys = new long[16];
+        private boolean[] removal = new boolean[16];
+        private int size;
+
+        synchronized void append(long key, boolean remove) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size << 1);
+                removal = Arrays.copyOf(removal, size << 1);
+            }
+            keys[size] = key;
+            removal[size++] = remove;
+        }
+
+        synchronized int pending() {
+            return size;
+        }
+
+        /**
+         * Applies the adds to the engine and hands the removals to the window, which applies them once all
+         * stripes have been drained.
+         */
+        synchronized void drain(GlobalWindow window) {
+            for (int i = 0; i < size; i++) {
+                if (removal[i]) {
+                    window.removeLater(keys[i]);
+                } else {
+                    window.engine.add(keys[i]);
+                    window.changed = true;
+                }
+            }
+            size = 0;
+        }
+    }
+
+    /**
+     * The keys one instance added to the window and has not removed yet, each with the number of times it holds
+     * it, so that it can take them all out again when its own window is reset. The counts are kept in an open
+     * addressing table of the distinct keys, where a key with a count of zero marks an empty slot.
+     */
+    static final class Contribution {
+        private long[] keys = new long[16];
+        private int[] counts = new int[16];
+        private int distinct;
+
+        void add(long key) {
+            int slot = slot(key);
+            if (counts[slot] > 0) {
+                counts[slot]++;
+                return;
+            }
+            keys[slot] = key;
+            counts[slot] = 1;
+            if (++distinct > keys.length >> 1) {
+                rehash(keys.length << 1);
+            }
+        }
+
+        /**
+         * Removes one occurrence of the key, returning false when the instance does not hold it.
+         */
+        boolean remove(long key) {
+            int slot = slot(key);
+            if (counts[slot] == 0) {
+                return false;
+            }
+            if (--counts[slot] == 0) {
+                distinct--;
+                close(slot);
+            }
+            return true;
+        }
+
+        /**
+         * Removes all keys from the window and forgets them.
+         */
+        void withdraw(GlobalWindow window) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                for (int count = counts[slot]; count > 0; count--) {
+                    window.remove(keys[slot]);
+                }
+            }
+            keys = new long[16];
+            counts = new int[16];
+            distinct = 0;
+        }
+
+        /**
+         * Encodes the number of distinct keys followed by each key, as its difference to the previous one, and
+         * its count.
+         */
+        byte[] snapshot() {
+            SnapshotOutput out = new SnapshotOutput(16 + 3 * distinct);
+            out.writeVarLong(distinct);
+            long previous = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] > 0) {
+                    out.writeSignedVarLong(keys[slot] - previous);
+                    out.writeVarLong(counts[slot]);
+                    previous = keys[slot];
+                }
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * Adds the keys of a snapshot to the window, after the ones held already.
+         */
+        void restore(byte[] snapshot, GlobalWindow window) {
+            SnapshotInput in = new SnapshotInput(snapshot);
+            long key = 0;
+            for (long entries = in.readVarLong(); entries > 0; entries--) {
+                key += in.readSignedVarLong();
+                for (long count = in.readVarLong(); count > 0; count--) {
+                    add(key);
+                    window.add(key);
+                }
+            }
+        }
+
+        /**
+         * Returns the slot holding the key, or the empty slot where it would be added.
+         */
+        private int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (counts[slot] > 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Empties the slot, moving back the keys after it that would no longer be found past the gap.
+         */
+        private void close(int slot) {
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int next = (gap + 1) & mask; counts[next] > 0; next = (next + 1) & mask) {
+                int home = hash(keys[next]) & mask;
+                // the key stays unless its home lies cyclically outside (gap, next]
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    counts[gap] = counts[next];
+                    gap = next;
+                }
+            }
+            counts[gap] = 0;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[capacity];
+            counts = new int[capacity];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldCounts[slot] > 0) {
+                    int target = slot(oldKeys[slot]);
+                    keys[target] = oldKeys[slot];
+                    counts[target] = oldCounts[slot];
+                }
+            }
+        }
+
+        /**
+         * Mixes all bits of the key into the low ones, which double keys of short decimal fractions leave alike.
+         */
+        private static int hash(long key) {
+            long mixed = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+            mixed = (mixed ^ (mixed >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return (int) (mixed ^ (mixed >>> 33));
+        }
+    }
+}
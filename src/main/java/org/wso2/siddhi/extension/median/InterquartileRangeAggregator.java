@@ -0,0 +1,88 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+@Extension(
+        name = "iqr",
+        namespace = "stat",
+        description = "Returns the interquartile range of aggregated events, the 75th percentile less the 25th, " +
+                "both interpolated as for stat:percentile. It shares the window of medians, percentiles and " +
+                "median absolute deviations of the same attribute selected with the same engine in one query. " +
+                "The engine, mode, memoryBudget, degradedAccuracy and offHeapDirectory properties of the " +
+                "extension apply as for stat:median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the interquartile range.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "engine",
+                        description = "The engine used to keep the window, 'auto', 'exact', 'batch', 'approx', " +
+                                "'counting' or 'offheap', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "auto"),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the 'approx' engine.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "mode",
+                        description = "'eager' or 'lazy', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' or 'global', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns double for all data types. ie int, long, double and float",
+                type = {DataType.DOUBLE}),
+        examples = @Example(
+                syntax = "from sensorStream#window.time(10 min)" +
+                        "\nselect stat:median(reading) as median, stat:iqr(reading) as iqr" +
+                        "\ninsert into outputStream;",
+                description = "This will return the median and the interquartile range of the readings of the " +
+                        "last ten minutes, both read from one window."
+        )
+)
+public class InterquartileRangeAggregator extends OrderStatisticAggregator {
+
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        return 1;
+    }
+
+    protected String getAggregatorName() {
+        return "Interquartile range";
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    protected Object result(MedianEngine engine, Object previous) {
+        return box(engine.quantile(0.75) - engine.quantile(0.25), previous);
+    }
+}
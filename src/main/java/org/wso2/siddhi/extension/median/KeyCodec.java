@@ -0,0 +1,70 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+/**
+ * Maps the numeric attribute types onto primitive long keys whose signed order is the natural order of the
+ * values, so a single primitive window structure serves every type. INT and LONG values are used as is, FLOAT
+ * and DOUBLE values are stored as their IEEE 754 bits with the magnitude bits flipped for negative numbers,
+ * which orders them exactly like {@link Double#compare(double, double)}.
+ */
+enum KeyCodec {
+
+    INT, LONG, FLOAT, DOUBLE;
+
+    static KeyCodec of(Attribute.Type type) {
+        switch (type) {
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            default:
+                throw new OperationNotSupportedException("Median not supported for " + type);
+        }
+    }
+
+    long encode(Object data) {
+        switch (this) {
+            case INT:
+            case LONG:
+                return ((Number) data).longValue();
+            default:
+                return encode(((Number) data).doubleValue());
+        }
+    }
+
+    double decode(long key) {
+        switch (this) {
+            case INT:
+            case LONG:
+                return key;
+            default:
+                return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+        }
+    }
+
+    static long encode(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
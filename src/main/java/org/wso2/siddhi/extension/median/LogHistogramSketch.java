@@ -0,0 +1,317 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+import java.util.Arrays;
+
+/**
+ * Approximate window storage with bounded memory. Values are counted in the logarithmically sized buckets of a
+ * {@link LogIndexMapping}, so any value read back is within the relative accuracy of the exact value of the same
+ * rank. Negative values are counted by magnitude in a second set of buckets and values too close to zero to index
+ * are counted as zero.
+ * <p>
+ * Each set keeps at most {@link #MAX_BINS} buckets in {@link SlidingBins}. When the values span more buckets than
+ * that, the lowest magnitudes are folded into the lowest kept bucket, so the accuracy bound holds for windows
+ * spanning a dynamic range below gamma^MAX_BINS, about 10^17 for an accuracy of 0.01. Removal decrements the
+ * bucket the value was counted in, so it is exact in count and approximate in value like insertion.
+ */
+class LogHistogramSketch extends MedianEngine {
+
+    static final int MAX_BINS = SlidingBins.MAX_BINS;
+
+    private final LogIndexMapping mapping;
+    private final double minIndexableValue;
+    private final Bins positive = new Bins();
+    private final Bins negative = new Bins();
+    private long zeroCount;
+
+    LogHistogramSketch(KeyCodec codec, double relativeAccuracy) {
+        super(codec);
+        this.mapping = new LogIndexMapping(relativeAccuracy);
+        this.minIndexableValue = mapping.minIndexableValue();
+    }
+
+    double getRelativeAccuracy() {
+        return mapping.relativeAccuracy();
+    }
+
+    void add(long key) {
+        double value = codec.decode(key);
+        if (value > minIndexableValue) {
+            positive.add(mapping.index(value));
+        } else if (value < -minIndexableValue) {
+            negative.add(mapping.index(-value));
+        } else if (value == value) {
+            zeroCount++;
+        } else {
+            positive.add(mapping.maxIndex());
+        }
+    }
+
+    boolean remove(long key) {
+        double value = codec.decode(key);
+        if (value > minIndexableValue) {
+            return positive.remove(mapping.index(value));
+        } else if (value < -minIndexableValue) {
+            return negative.remove(mapping.index(-value));
+        } else if (value == value) {
+            if (zeroCount == 0) {
+                return false;
+            }
+            zeroCount--;
+            return true;
+        } else {
+            return positive.remove(mapping.maxIndex());
+        }
+    }
+
+    /**
+     * Returns the number of values up to Integer.MAX_VALUE, the sketch of a long running window counting more.
+     */
+    int size() {
+        return (int) Math.min(count(), Integer.MAX_VALUE);
+    }
+
+    long count() {
+        return negative.total + zeroCount + positive.total;
+    }
+
+    void clear() {
+        positive.clear();
+        negative.clear();
+        zeroCount = 0;
+    }
+
+    double valueAt(int rank) {
+        return valueAt((long) rank);
+    }
+
+    double valueAt(long rank) {
+        if (rank < negative.total) {
+            return -mapping.value(negative.indexAtDescending(rank));
+        }
+        rank -= negative.total;
+        if (rank < zeroCount) {
+            return 0.0;
+        }
+        rank -= zeroCount;
+        return mapping.value(positive.indexAt(rank));
+    }
+
+    void writeTo(SnapshotOutput out) {
+        out.writeByte(LOG_HISTOGRAM);
+        out.writeDouble(mapping.relativeAccuracy());
+        out.writeVarLong(zeroCount);
+        positive.writeTo(out);
+        negative.writeTo(out);
+    }
+
+    int snapshotBytes() {
+        return 32 + 10 * (positive.counts.length + negative.counts.length);
+    }
+
+    long estimatedBytes() {
+        return arrayBytes(positive.counts.length, 8) + arrayBytes(negative.counts.length, 8);
+    }
+
+    /**
+     * Reads the buckets of a sketch with the same accuracy, or counts the keys of an exact window.
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format != LOG_HISTOGRAM) {
+            super.readFrom(in, format);
+            return;
+        }
+        double accuracy = in.readDouble();
+        if (accuracy != mapping.relativeAccuracy()) {
+            throw new OperationNotSupportedException("Median window snapshot of accuracy " + accuracy + " cannot " +
+                    "be restored into a sketch of accuracy " + mapping.relativeAccuracy());
+        }
+        zeroCount = in.readVarLong();
+        positive.readFrom(in);
+        negative.readFrom(in);
+    }
+
+    /**
+     * Creates a sketch holding the counts of a sketch snapshot, with the accuracy it was taken at.
+     */
+    static LogHistogramSketch of(byte[] snapshot) {
+        SnapshotInput in = openSketch(snapshot);
+        LogHistogramSketch sketch = new LogHistogramSketch(KeyCodec.DOUBLE, in.readDouble());
+        sketch.restore(snapshot);
+        return sketch;
+    }
+
+    /**
+     * Adds the counts of a sketch snapshot, or takes them away again when subtract is set. Counts that were never
+     * added are not taken away, so the sketch never holds a negative count. The buckets of a sketch of another
+     * accuracy are counted at the bucket of the value they report, which then is within the sum of both
+     * accuracies of the exact value.
+     */
+    void merge(byte[] snapshot, boolean subtract) {
+        SnapshotInput in = openSketch(snapshot);
+        double accuracy = in.readDouble();
+        LogIndexMapping source = accuracy == mapping.relativeAccuracy() ? mapping : new LogIndexMapping(accuracy);
+        mergeZeros(in.readVarLong(), subtract);
+        merge(in, positive, source, subtract);
+        merge(in, negative, source, subtract);
+    }
+
+    private void merge(SnapshotInput in, Bins bins, LogIndexMapping source, boolean subtract) {
+        int span = (int) in.readVarLong();
+        if (span == 0) {
+            return;
+        }
+        int from = (int) in.readSignedVarLong();
+        for (int index = from; index < from + span; index++) {
+            long count = in.readVarLong();
+            if (count == 0) {
+                continue;
+            }
+            int target = index;
+            if (source != mapping) {
+                double magnitude = source.value(index);
+                if (magnitude <= minIndexableValue) {
+                    mergeZeros(count, subtract);
+                    continue;
+                }
+                target = mapping.index(magnitude);
+            }
+            if (subtract) {
+                bins.remove(target, count);
+            } else {
+                bins.add(target, count);
+            }
+        }
+    }
+
+    private void mergeZeros(long count, boolean subtract) {
+        zeroCount = subtract ? zeroCount - Math.min(count, zeroCount) : zeroCount + count;
+    }
+
+    private static SnapshotInput openSketch(byte[] snapshot) {
+        SnapshotInput in = open(snapshot);
+        if (in.readByte() != LOG_HISTOGRAM) {
+            throw new OperationNotSupportedException("Median sketches can only be merged from snapshots of the " +
+                    "'approx' engine");
+        }
+        return in;
+    }
+
+    /**
+     * Counts of the values in each bucket.
+     */
+    private static final class Bins extends SlidingBins {
+
+        private long[] counts = new long[0];
+        private long total;
+
+        void add(int index) {
+            add(index, 1);
+        }
+
+        void add(int index, long count) {
+            if (index < minIndex || index > maxIndex) {
+                extendRange(index);
+            }
+            counts[slot(index)] += count;
+            total += count;
+        }
+
+        boolean remove(int index) {
+            return remove(index, 1) > 0;
+        }
+
+        /**
+         * Takes away up to count values from the bucket and returns how many it held.
+         */
+        long remove(int index, long count) {
+            if (total == 0 || index > maxIndex) {
+                return 0;
+            }
+            int slot = slot(index);
+            long removed = Math.min(count, counts[slot]);
+            counts[slot] -= removed;
+            total -= removed;
+            if (total == 0) {
+                clear();
+            }
+            return removed;
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            total = 0;
+            clearRange();
+        }
+
+        int indexAt(long rank) {
+            for (int index = minIndex; index < maxIndex; index++) {
+                rank -= counts[index - offset];
+                if (rank < 0) {
+                    return index;
+                }
+            }
+            return maxIndex;
+        }
+
+        int indexAtDescending(long rank) {
+            for (int index = maxIndex; index > minIndex; index--) {
+                rank -= counts[index - offset];
+                if (rank < 0) {
+                    return index;
+                }
+            }
+            return minIndex;
+        }
+
+        boolean isEmpty() {
+            return total == 0;
+        }
+
+        int capacity() {
+            return counts.length;
+        }
+
+        void relayout(int capacity, int newOffset, int newMinIndex) {
+            long[] newCounts = new long[capacity];
+            for (int i = minIndex; i <= maxIndex && total > 0; i++) {
+                newCounts[Math.max(i, newMinIndex) - newOffset] += counts[i - offset];
+            }
+            counts = newCounts;
+        }
+
+        void fold(int newMinIndex) {
+            long folded = 0;
+            for (int i = minIndex; i < newMinIndex; i++) {
+                folded += counts[i - offset];
+                counts[i - offset] = 0;
+            }
+            counts[newMinIndex - offset] += folded;
+        }
+
+        void writeBucket(SnapshotOutput out, int slot) {
+            out.writeVarLong(counts[slot]);
+        }
+
+        void readBucket(SnapshotInput in, int slot) {
+            counts[slot] = in.readVarLong();
+            total += counts[slot];
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+/**
+ * Maps magnitudes to logarithmically sized buckets for a relative accuracy. Bucket i holds the magnitudes in
+ * (gamma^(i-1), gamma^i] with gamma = (1 + accuracy) / (1 - accuracy) and reports the value 2 gamma^i / (gamma + 1),
+ * which is within the relative accuracy of every magnitude in the bucket. Magnitudes too close to zero to index
+ * are left to the caller, and those too large to index go to the highest bucket.
+ */
+final class LogIndexMapping {
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final double minIndexableValue;
+    private final int maxIndex;
+
+    LogIndexMapping(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndexableValue = Double.MIN_NORMAL * gamma;
+        this.maxIndex = (int) Math.ceil(Math.log(Double.MAX_VALUE) / logGamma);
+    }
+
+    double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Returns the smallest magnitude that has a bucket of its own.
+     */
+    double minIndexableValue() {
+        return minIndexableValue;
+    }
+
+    /**
+     * Returns the bucket of the largest magnitudes, which also counts NaN.
+     */
+    int maxIndex() {
+        return maxIndex;
+    }
+
+    int index(double magnitude) {
+        return (int) Math.min(Math.ceil(Math.log(magnitude) / logGamma), maxIndex);
+    }
+
+    double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+@Extension(
+        name = "mad",
+        namespace = "stat",
+        description = "Returns the median absolute deviation of aggregated events, the median of the distances of " +
+                "the values to their median. It is read from the sorted window with a binary search, in " +
+                "O(log n) reads of the window, and shares the window of medians, percentiles and interquartile " +
+                "ranges of the same attribute selected with the same engine in one query. The engine, mode, " +
+                "memoryBudget, degradedAccuracy and offHeapDirectory properties of the extension apply as for " +
+                "stat:median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the median absolute deviation.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "engine",
+                        description = "The engine used to keep the window, 'auto', 'exact', 'batch', 'approx', " +
+                                "'counting' or 'offheap', as for stat:median. With 'approx' the deviation is taken " +
+                                "between approximate values, so its error is the accuracy relative to the values " +
+                                "rather than to the deviation.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "auto"),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the 'approx' engine.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "mode",
+                        description = "'eager' or 'lazy', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' or 'global', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns double for all data types. ie int, long, double and float",
+                type = {DataType.DOUBLE}),
+        examples = @Example(
+                syntax = "from latencyStream#window.length(1000)" +
+                        "\nselect latency, stat:median(latency) as median, stat:mad(latency) as mad" +
+                        "\nhaving latency > median + 3 * 1.4826 * mad" +
+                        "\ninsert into outlierStream;",
+                description = "This will return the latencies more than three standard deviations, estimated " +
+                        "from the median absolute deviation, above the median of the last 1000 latencies, with " +
+                        "the median and the deviation read from one window."
+        )
+)
+public class MedianAbsoluteDeviationAggregator extends OrderStatisticAggregator {
+
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        return 1;
+    }
+
+    protected String getAggregatorName() {
+        return "Median absolute deviation";
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    protected Object result(MedianEngine engine, Object previous) {
+        return box(engine.medianAbsoluteDeviation(), previous);
+    }
+}
@@ -20,333 +20,147 @@ import org.wso2.siddhi.annotation.Extension;
 import org.wso2.siddhi.annotation.Parameter;
 import org.wso2.siddhi.annotation.ReturnAttribute;
 import org.wso2.siddhi.annotation.util.DataType;
-import org.wso2.siddhi.core.config.ExecutionPlanContext;
-import org.wso2.siddhi.core.exception.OperationNotSupportedException;
 import org.wso2.siddhi.core.executor.ExpressionExecutor;
-import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
-import org.wso2.siddhi.core.util.config.ConfigReader;
 import org.wso2.siddhi.query.api.definition.Attribute;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 @Extension(
         name = "median",
         namespace = "stat",
-        description = "Returns the median of aggregated events.",
+        description = "Returns the median of aggregated events. The engine and mode properties of the extension " +
+                "set the engine and mode of queries that leave them out. The memoryBudget property, in " +
+                "bytes or with a kb, mb or gb suffix, limits the memory of each exact window: a window that " +
+                "exceeds it continues with a median within degradedAccuracy, 0.01 unless configured, and returns " +
+                "to the exact median once it fits in half the budget again. The offHeapDirectory property keeps " +
+                "'offheap' windows in memory-mapped files under that directory, which are checkpointed by " +
+                "copying the pages changed since to one of two checkpoint files next to each file, in turns, and " +
+                "resumed from the copies. Other windows are persisted incrementally: a revision carries the whole " +
+                "window only when the window was compacted since the previous one, and otherwise only the " +
+                "changes since, so such a revision restores only in the process that persisted it.",
         parameters = {
                 @Parameter(name = "arg",
                         description = "The value that needs to be aggregated for the median.",
-                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.LONG})
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "engine",
+                        description = "The engine used to keep the window. 'auto' starts as 'exact' and moves " +
+                                "the window to the 'batch' engine while the median is read rarely for the size of " +
+                                "the window, and to the 'counting' engine while int or long values span a range " +
+                                "of at most four times the window size. 'exact' keeps the values in a sorted array " +
+                                "that becomes an order-statistic tree as the window grows, and updates the median " +
+                                "on every event. 'batch' appends the values to an unordered buffer and selects " +
+                                "the median once per batch, which suits lengthBatch and timeBatch windows without " +
+                                "group by, where Siddhi only emits the last event of each batch. 'approx' counts " +
+                                "the values in a fixed size logarithmic histogram, for unbounded or very large " +
+                                "windows. 'counting' counts int or long values in an array over their range and " +
+                                "finds the median with a Fenwick tree, for values of a small range such as status " +
+                                "codes or capped latencies. 'offheap' keeps the values of an exact window in pages " +
+                                "of sorted values off the heap, in direct buffers or in the files of the " +
+                                "offHeapDirectory, for windows of tens of millions of values. Each window takes at " +
+                                "least 256 KB.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "auto"),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the 'approx' engine. The reported median is within " +
+                                "this fraction of the exact one while the window spans a dynamic range below " +
+                                "((1 + accuracy) / (1 - accuracy))^2048, about 10^17 at 0.01, and the engine never " +
+                                "holds more than 2 x 2048 counters.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "min",
+                        description = "Lowest value of the range of the 'counting' engine, given together with " +
+                                "max. Without them the range is grown around the values, up to 65536 values. A " +
+                                "value outside the range moves the window to the 'exact' engine.",
+                        type = {DataType.INT, DataType.LONG},
+                        optional = true,
+                        defaultValue = "detected"),
+                @Parameter(name = "max",
+                        description = "Highest value of the range of the 'counting' engine, at most 2^20 values " +
+                                "above min. The engine takes 8 bytes for every value of the range in every group " +
+                                "and partition.",
+                        type = {DataType.INT, DataType.LONG},
+                        optional = true,
+                        defaultValue = "detected"),
+                @Parameter(name = "mode",
+                        description = "'eager' reads the median for every event. 'lazy' reads it only for the " +
+                                "last event of each run of arriving or expiring events in a chunk, which is the " +
+                                "only one batch windows emit, and leaves the previous median on the others. The " +
+                                "'batch' engine is always lazy. Either way the median is read only when the window " +
+                                "changed.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' keeps a window for each partition and group. 'global' shares one " +
+                                "window between all partitions and groups of the query, for a median over all of " +
+                                "them. Partition threads append to striped buffers that are merged when the " +
+                                "median is read. In 'eager' mode a read that finds another partition merging " +
+                                "returns the median last merged instead of waiting, which may miss the latest " +
+                                "events of other partitions. 'lazy' reads wait for the merge.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local")
 
         },
         returnAttributes = @ReturnAttribute(
                 description = "Returns double for all data types. ie int, long, double and float",
                 type = {DataType.DOUBLE}),
-        examples = @Example(
-                syntax = "from inputStream#window.length(5)" +
-                        "\nselect stat:median(value) as medianOfValues" +
-                        "\ninsert into outputStream;",
-                description = "This will returns the median of aggregated values as a double value " +
-                        "for each event arrival and expiry of sliding window length 5."
-        )
-)
-public class MedianAggregator extends AttributeAggregator {
-    private MedianAggregator medianAggregator;
-
-    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
-                        ExecutionPlanContext executionPlanContext) {
-        if (expressionExecutors.length != 1) {
-            throw new OperationNotSupportedException("Median aggregator has to have exactly 1 parameter, currently " +
-                    expressionExecutors.length + " parameters are provided");
+        examples = {
+                @Example(
+                        syntax = "from inputStream#window.length(5)" +
+                                "\nselect stat:median(value) as medianOfValues" +
+                                "\ninsert into outputStream;",
+                        description = "This will returns the median of aggregated values as a double value " +
+                                "for each event arrival and expiry of sliding window length 5."
+                ),
+                @Example(
+                        syntax = "from inputStream#window.lengthBatch(1000)" +
+                                "\nselect stat:median(value, 'batch') as medianOfValues" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median of every batch of 1000 values, selecting it " +
+                                "once when the batch is emitted instead of once per event."
+                ),
+                @Example(
+                        syntax = "from inputStream#window.time(1 min)" +
+                                "\nselect stat:median(latencyMs, 'counting', 0, 60000) as medianLatency" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median latency of the last minute, counting the " +
+                                "latencies in an array over 0 to 60000 ms."
+                ),
+                @Example(
+                        syntax = "from inputStream#window.time(1 day)" +
+                                "\nselect stat:median(value, 'approx', 0.01) as medianOfValues" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median of the last day of values within 1% of the " +
+                                "exact median, using a fixed amount of memory however many events arrive."
+                ),
+                @Example(
+                        syntax = "partition with (region of inputStream)" +
+                                "\nbegin" +
+                                "\n    from inputStream#window.time(1 min)" +
+                                "\n    select region, stat:median(value, 'exact', 'eager', 'global') as globalMedian" +
+                                "\n    insert into outputStream;" +
+                                "\nend;",
+                        description = "This will return the median of the last minute of values of all regions, " +
+                                "kept in one window that the partitions of the regions share."
+                )
         }
+)
+public class MedianAggregator extends OrderStatisticAggregator {
 
-        Attribute.Type type = expressionExecutors[0].getReturnType();
-
-        switch (type) {
-            case DOUBLE:
-                this.medianAggregator = new MedianAggregatorDouble();
-                break;
-            case INT:
-                this.medianAggregator = new MedianAggregatorInt();
-                break;
-            case FLOAT:
-                this.medianAggregator = new MedianAggregatorFloat();
-            case LONG:
-                this.medianAggregator = new MedianAggregatorLong();
-            default:
-                throw new OperationNotSupportedException("Median not supported for " + type);
-        }
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        return 1;
     }
 
+    protected String getAggregatorName() {
+        return "Median";
+    }
 
     public Attribute.Type getReturnType() {
         return Attribute.Type.DOUBLE;
     }
 
-    public Object processAdd(Object data) {
-        return this.medianAggregator.processAdd(data);
-    }
-
-
-    public Object processAdd(Object[] data) {
-        return new IllegalStateException("Median cannot process data array, but found " + Arrays.deepToString(data));
-    }
-
-
-    public Object processRemove(Object data) {
-        return this.medianAggregator.processRemove(data);
-    }
-
-
-    public Object processRemove(Object[] data) {
-        return new IllegalStateException("Median cannot process data array, but found " + Arrays.deepToString(data));
-    }
-
-
-    public Object reset() {
-        return this.medianAggregator.reset();
-    }
-
-
-    public void start() {
-    }
-
-
-    public void stop() {
-    }
-
-    public Map<String, Object> currentState() {
-        return this.medianAggregator.currentState();
-    }
-
-    public void restoreState(Map<String, Object> map) {
-        this.medianAggregator.restoreState(map);
-    }
-
-
-    private class MedianAggregatorDouble extends MedianAggregator {
-
-        private ArrayList<Double> arrayList = new ArrayList<Double>();
-        private int count = 0;
-        private double median;
-
-
-        public Object processAdd(Object data) {
-            this.arrayList.add((Double) data);
-            this.count++;
-            this.median = getMedian();
-            return median;
-        }
-
-        private double getMedian() {
-            Collections.sort(this.arrayList);
-
-            int midPointA = this.count / 2;
-            if (this.count % 2 == 0) {
-                int midPointB = midPointA - 1;
-                return (this.arrayList.get(midPointA) + this.arrayList.get(midPointB)) / 2.0;
-            }
-
-            return this.arrayList.get(midPointA);
-        }
-
-
-        public Object processRemove(Object data) {
-            this.arrayList.remove(data);
-            this.count--;
-            return median;
-        }
-
-
-        public Object reset() {
-            this.arrayList = new ArrayList<Double>();
-            this.count = 0;
-            this.median = 0.0;
-            return median;
-        }
-
-        public Map<String, Object> currentState() {
-            Map<String, Object> state = new HashMap();
-            state.put("Median", Double.valueOf(this.median));
-            state.put("Count", Integer.valueOf(this.count));
-            return state;
-        }
-
-        public void restoreState(Map<String, Object> state) {
-            this.median = ((Double) state.get("Median")).doubleValue();
-            this.count = ((Integer) state.get("Count")).intValue();
-
-        }
-    }
-
-    private class MedianAggregatorLong extends MedianAggregator {
-
-        private ArrayList<Long> arrayList = new ArrayList<Long>();
-        private int count = 0;
-        private double median;
-
-
-        public Object processAdd(Object data) {
-            this.arrayList.add((Long) data);
-            this.count++;
-            this.median = getMedian();
-            return median;
-        }
-
-        private double getMedian() {
-            Collections.sort(this.arrayList);
-
-            int midPointA = this.count / 2;
-            if (this.count % 2 == 0) {
-                int midPointB = midPointA - 1;
-                return (this.arrayList.get(midPointA) + this.arrayList.get(midPointB)) / 2.0;
-            }
-
-            return this.arrayList.get(midPointA);
-        }
-
-
-        public Object processRemove(Object data) {
-            this.arrayList.remove(data);
-            this.count--;
-            return median;
-        }
-
-
-        public Object reset() {
-            this.arrayList = new ArrayList<Long>();
-            this.count = 0;
-            this.median = 0.0;
-            return median;
-        }
-
-        public Map<String, Object> currentState() {
-            Map<String, Object> state = new HashMap();
-            state.put("Median", Double.valueOf(this.median));
-            state.put("Count", Integer.valueOf(this.count));
-            return state;
-        }
-
-        public void restoreState(Map<String, Object> state) {
-            this.median = ((Double) state.get("Median")).doubleValue();
-            this.count = ((Integer) state.get("Count")).intValue();
-
-        }
-    }
-
-    private class MedianAggregatorFloat extends MedianAggregator {
-
-        private ArrayList<Float> arrayList = new ArrayList<Float>();
-        private int count = 0;
-        private double median;
-
-        public Object processAdd(Object data) {
-            this.arrayList.add((Float) data);
-            this.count++;
-            this.median = getMedian();
-            return median;
-        }
-
-        private double getMedian() {
-            Collections.sort(this.arrayList);
-
-            int midPointA = this.count / 2;
-            if (this.count % 2 == 0) {
-                int midPointB = midPointA - 1;
-                return (this.arrayList.get(midPointA) + this.arrayList.get(midPointB)) / 2.0;
-            }
-
-            return this.arrayList.get(midPointA);
-        }
-
-        public Object processRemove(Object data) {
-            this.arrayList.remove(data);
-            this.count--;
-            return this.median;
-        }
-
-
-        public Object reset() {
-            this.arrayList = new ArrayList<Float>();
-            this.count = 0;
-            this.median = 0.0;
-            return this.median;
-        }
-
-        public Map<String, Object> currentState() {
-            Map<String, Object> state = new HashMap();
-            state.put("Median", Double.valueOf(this.median));
-            state.put("Count", Integer.valueOf(this.count));
-            return state;
-        }
-
-        public void restoreState(Map<String, Object> state) {
-            this.median = ((Double) state.get("Median")).doubleValue();
-            this.count = ((Integer) state.get("Count")).intValue();
-
-        }
-    }
-
-    private class MedianAggregatorInt extends MedianAggregator {
-
-        private ArrayList<Integer> arrayList = new ArrayList<Integer>();
-        private int count = 0;
-        private double median;
-
-        public Object processAdd(Object data) {
-            this.arrayList.add((Integer) data);
-            this.count++;
-            this.median = getMedian();
-            return median;
-        }
-
-        private Double getMedian() {
-
-            Collections.sort(this.arrayList);
-
-            int midPointA = this.count / 2;
-            if (this.count % 2 == 0) {
-                int midPointB = midPointA - 1;
-                return (this.arrayList.get(midPointA) + this.arrayList.get(midPointB)) / 2.0;
-            }
-
-            return this.arrayList.get(midPointA) * 1.0;
-        }
-
-        public Object processRemove(Object data) {
-            this.arrayList.remove(data);
-            this.count--;
-            return median;
-        }
-
-
-        public Object reset() {
-            this.arrayList = new ArrayList<Integer>();
-            this.count = 0;
-            this.median = 0.0;
-            return median;
-        }
-
-        public Map<String, Object> currentState() {
-            Map<String, Object> state = new HashMap();
-            state.put("Median", Double.valueOf(this.median));
-            state.put("Count", Integer.valueOf(this.count));
-            return state;
-        }
-
-        public void restoreState(Map<String, Object> state) {
-            this.median = ((Double) state.get("Median")).doubleValue();
-            this.count = ((Integer) state.get("Count")).intValue();
-
-        }
+    protected Object result(MedianEngine engine, Object previous) {
+        return box(engine.median(), previous);
     }
-
-
 }
-
-
-
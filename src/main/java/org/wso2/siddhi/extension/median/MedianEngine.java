@@ -0,0 +1,259 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+/**
+ * Window storage behind the median aggregators. Values arrive as keys produced by the engine's {@link KeyCodec}
+ * and results are reported as doubles.
+ */
+abstract class MedianEngine {
+
+    static final int SNAPSHOT_VERSION = 1;
+    static final int SORTED_RUNS = 1;
+    static final int LOG_HISTOGRAM = 2;
+    static final int WEIGHTED_RUNS = 3;
+    static final int DECAYED_HISTOGRAM = 4;
+
+    protected final KeyCodec codec;
+
+    MedianEngine(KeyCodec codec) {
+        this.codec = codec;
+    }
+
+    abstract void add(long key);
+
+    /**
+     * Removes one occurrence of the key, returning false when the window does not hold it. Engines that defer
+     * removals until they are read return false only for keys they cannot hold, and keep a removal that matches
+     * nothing when it is applied for the next time they are read.
+     */
+    abstract boolean remove(long key);
+
+    abstract int size();
+
+    /**
+     * Returns the number of values in the window. Only the sketch, which counts values instead of keeping them,
+     * can hold more than an int counts, and its values are read back with {@link #valueAt(long)}.
+     */
+    long count() {
+        return size();
+    }
+
+    abstract void clear();
+
+    /**
+     * Returns the value at the given zero based position of the sorted window.
+     */
+    abstract double valueAt(int rank);
+
+    /**
+     * Returns the value at a position of a window that may hold more values than an int counts.
+     */
+    double valueAt(long rank) {
+        return valueAt((int) rank);
+    }
+
+    double median() {
+        long count = count();
+        if (count == 0) {
+            return 0.0;
+        }
+        long midPointA = count / 2;
+        if (count % 2 == 0) {
+            long midPointB = midPointA - 1;
+            return (valueAt(midPointA) + valueAt(midPointB)) / 2.0;
+        }
+        return valueAt(midPointA);
+    }
+
+    /**
+     * Returns the q-quantile, 0 &lt;= q &lt;= 1, interpolating linearly between the two closest ranks, which is the
+     * definition used by Excel's PERCENTILE and R's default type 7. The 0.5-quantile is the median.
+     */
+    double quantile(double q) {
+        long count = count();
+        if (count == 0) {
+            return 0.0;
+        }
+        double position = q * (count - 1);
+        long lower = (long) position;
+        double fraction = position - lower;
+        double lowerValue = valueAt(lower);
+        if (fraction == 0 || lower + 1 >= count) {
+            return lowerValue;
+        }
+        return lowerValue * (1 - fraction) + valueAt(lower + 1) * fraction;
+    }
+
+    /**
+     * Returns the median absolute deviation, the median of the distances of the values to their median. The
+     * distances of the values below the median and of those above it form two sorted sequences, so the middle
+     * distance is found with a binary search over both instead of a pass over the window.
+     */
+    double medianAbsoluteDeviation() {
+        long count = count();
+        if (count == 0) {
+            return 0.0;
+        }
+        double median = median();
+        long midPointA = count / 2;
+        if (count % 2 == 0) {
+            long midPointB = midPointA - 1;
+            return (deviationAt(midPointA, count, median) + deviationAt(midPointB, count, median)) / 2.0;
+        }
+        return deviationAt(midPointA, count, median);
+    }
+
+    /**
+     * Returns the k-th smallest, zero based, distance of a value to the median, searching for how many of the
+     * k + 1 smallest distances belong to values below the median.
+     */
+    private double deviationAt(long k, long count, double median) {
+        long below = count / 2;
+        long lo = Math.max(0, k + 1 - (count - below));
+        long hi = Math.min(k + 1, below);
+        while (lo < hi) {
+            long fromBelow = (lo + hi) >>> 1;
+            if (median - valueAt(below - 1 - fromBelow) < valueAt(below + k - fromBelow) - median) {
+                lo = fromBelow + 1;
+            } else {
+                hi = fromBelow;
+            }
+        }
+        double deviation = 0.0;
+        if (lo > 0) {
+            deviation = median - valueAt(below - lo);
+        }
+        long fromAbove = k + 1 - lo;
+        if (fromAbove > 0) {
+            deviation = Math.max(deviation, valueAt(below + fromAbove - 1) - median);
+        }
+        return deviation;
+    }
+
+    /**
+     * Encodes the whole window. The first byte is the snapshot version and the second the format written by the
+     * engine: exact engines write their keys as sorted runs, the distinct key count followed by the difference of
+     * each key to the previous one and the number of times it occurs, all as varints.
+     */
+    byte[] snapshot() {
+        SnapshotOutput out = new SnapshotOutput(snapshotBytes());
+        out.writeByte(SNAPSHOT_VERSION);
+        writeTo(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the expected size of a snapshot, about 3 bytes a value for the sorted runs of exact engines.
+     */
+    int snapshotBytes() {
+        return 16 + 3 * size();
+    }
+
+    /**
+     * Replaces the window with the one encoded in the snapshot.
+     */
+    void restore(byte[] snapshot) {
+        SnapshotInput in = open(snapshot);
+        clear();
+        readFrom(in, in.readByte());
+    }
+
+    /**
+     * Checks the version of a snapshot and returns an input positioned at its format.
+     */
+    static SnapshotInput open(byte[] snapshot) {
+        SnapshotInput in = new SnapshotInput(snapshot);
+        int version = in.readByte();
+        if (version != SNAPSHOT_VERSION) {
+            throw new OperationNotSupportedException("Median window snapshot version " + version + " is not " +
+                    "supported, expected version " + SNAPSHOT_VERSION);
+        }
+        return in;
+    }
+
+    abstract void writeTo(SnapshotOutput out);
+
+    /**
+     * Estimates the bytes the engine's arrays take on the heap.
+     */
+    abstract long estimatedBytes();
+
+    /**
+     * Returns the engine that currently holds the window, which differs from this one for engines that move
+     * their window to another engine as it grows.
+     */
+    MedianEngine active() {
+        return this;
+    }
+
+    /**
+     * Releases what the engine holds outside the heap, which only off-heap windows do. A closed engine cannot be
+     * used again.
+     */
+    void close() {
+    }
+
+    static long arrayBytes(int length, int elementSize) {
+        return 16 + (long) length * elementSize;
+    }
+
+    /**
+     * Writes the first size keys of a sorted array as sorted runs.
+     */
+    static void writeSortedRuns(SnapshotOutput out, long[] keys, int size) {
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                distinct++;
+            }
+        }
+        out.writeByte(SORTED_RUNS);
+        out.writeVarLong(distinct);
+        long previous = 0;
+        for (int i = 0; i < size; ) {
+            int end = i + 1;
+            while (end < size && keys[end] == keys[i]) {
+                end++;
+            }
+            out.writeVarLong(keys[i] - previous);
+            out.writeVarLong(end - i);
+            previous = keys[i];
+            i = end;
+        }
+    }
+
+    /**
+     * Reads the window from an empty engine. Sorted runs are added key by key unless the engine overrides this
+     * with a faster way.
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format != SORTED_RUNS) {
+            throw new OperationNotSupportedException("An approximate median window cannot be restored into " +
+                    "an exact engine");
+        }
+        long distinct = in.readVarLong();
+        long key = 0;
+        for (long i = 0; i < distinct; i++) {
+            key += in.readVarLong();
+            for (long count = in.readVarLong(); count > 0; count--) {
+                add(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.apache.log4j.Logger;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Statistics shared by all group and partition instances of one aggregator. Instances check {@link #enabled}
+ * before each operation and, when it is set, time the operation and report how their window's size and footprint
+ * changed since they last reported.
+ */
+final class MedianMetrics implements MedianMetricsMXBean {
+
+    static final int SAMPLING = 16;
+    private static final Logger log = Logger.getLogger(MedianMetrics.class);
+
+    volatile boolean enabled;
+    final Latency adds = new Latency();
+    final Latency removes = new Latency();
+    final Latency reads = new Latency();
+    private final String engine;
+    private final LongAdder values = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder degradations = new LongAdder();
+    private final LongAdder recoveries = new LongAdder();
+    private volatile Class<?> activeEngine;
+    private volatile GlobalWindow global;
+    private ObjectName name;
+
+    MedianMetrics(String engine, boolean enabled) {
+        this.engine = engine;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Adds the changes of an instance's window since it last reported.
+     */
+    void report(MedianEngine active, long valueChange, long byteChange) {
+        activeEngine = active.getClass();
+        values.add(valueChange);
+        bytes.add(byteChange);
+    }
+
+    /**
+     * Counts a window that exceeded its memory budget and became approximate.
+     */
+    void degraded() {
+        degradations.increment();
+    }
+
+    /**
+     * Counts a degraded window that fits its memory budget and is exact again.
+     */
+    void recovered() {
+        recoveries.increment();
+    }
+
+    /**
+     * Reads the window size and footprint from the window all instances share instead of their reports.
+     */
+    void share(GlobalWindow global) {
+        this.global = global;
+    }
+
+    void register(String type, String plan, String id) {
+        try {
+            ObjectName name = new ObjectName("org.wso2.siddhi.extension.median:type=" + type + ",plan=" +
+                    ObjectName.quote(String.valueOf(plan)) + ",name=" + ObjectName.quote(String.valueOf(id)));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                // left behind by an earlier deployment of the same plan
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            this.name = name;
+        } catch (JMException e) {
+            log.warn("Cannot register the metrics of " + type + " aggregator " + id + " of execution plan " + plan +
+                    " with JMX", e);
+        }
+    }
+
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            log.warn("Cannot unregister the metrics " + name + " from JMX", e);
+        }
+        name = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public String getActiveEngine() {
+        GlobalWindow global = this.global;
+        Class<?> active = global != null ? global.activeEngine() : activeEngine;
+        return active == null ? null : active.getSimpleName();
+    }
+
+    public long getWindowValues() {
+        GlobalWindow global = this.global;
+        return global != null ? global.count() : values.sum();
+    }
+
+    public long getEstimatedBytes() {
+        GlobalWindow global = this.global;
+        return global != null ? global.estimatedBytes() : bytes.sum();
+    }
+
+    public long getDegradations() {
+        return degradations.sum();
+    }
+
+    public long getRecoveries() {
+        return recoveries.sum();
+    }
+
+    public long getAddCount() {
+        return adds.operations();
+    }
+
+    public double getAddMeanNanos() {
+        return adds.mean();
+    }
+
+    public long getAddP50Nanos() {
+        return adds.percentile(0.5);
+    }
+
+    public long getAddP99Nanos() {
+        return adds.percentile(0.99);
+    }
+
+    public long getRemoveCount() {
+        return removes.operations();
+    }
+
+    public double getRemoveMeanNanos() {
+        return removes.mean();
+    }
+
+    public long getRemoveP50Nanos() {
+        return removes.percentile(0.5);
+    }
+
+    public long getRemoveP99Nanos() {
+        return removes.percentile(0.99);
+    }
+
+    public long getReadCount() {
+        return reads.operations();
+    }
+
+    public double getReadMeanNanos() {
+        return reads.mean();
+    }
+
+    public long getReadP50Nanos() {
+        return reads.percentile(0.5);
+    }
+
+    public long getReadP99Nanos() {
+        return reads.percentile(0.99);
+    }
+
+    public void resetLatencies() {
+        adds.reset();
+        removes.reset();
+        reads.reset();
+    }
+
+    /**
+     * Counts operations and their sampled latencies in buckets of powers of two, bucket b holding the ones below
+     * 2^b.
+     */
+    static final class Latency {
+        private final LongAdder operations = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder total = new LongAdder();
+
+        void count() {
+            operations.increment();
+        }
+
+        void record(long nanos) {
+            operations.increment();
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+            total.add(nanos);
+        }
+
+        long operations() {
+            return operations.sum();
+        }
+
+        double mean() {
+            long samples = samples();
+            return samples == 0 ? 0.0 : (double) total.sum() / samples;
+        }
+
+        long percentile(double q) {
+            long rank = (long) Math.ceil(q * samples());
+            long seen = 0;
+            for (int b = 0; b < 64; b++) {
+                seen += buckets.get(b);
+                if (seen >= rank && seen > 0) {
+                    return b == 63 ? Long.MAX_VALUE : 1L << b;
+                }
+            }
+            return 0;
+        }
+
+        void reset() {
+            operations.reset();
+            for (int b = 0; b < 64; b++) {
+                buckets.set(b, 0);
+            }
+            total.reset();
+        }
+
+        private long samples() {
+            long samples = 0;
+            for (int b = 0; b < 64; b++) {
+                samples += buckets.get(b);
+            }
+            return samples;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+/**
+ * Window and latency statistics of one order statistic aggregator in a query, registered with the platform
+ * MBean server under org.wso2.siddhi.extension.median. Operations are counted exactly, while latencies are timed
+ * for one in {@link MedianMetrics#SAMPLING} operations of each instance. They are in nanoseconds, percentiles being
+ * the upper bound of the power of two bucket holding them, and add and remove latencies include reading the
+ * result.
+ */
+public interface MedianMetricsMXBean {
+
+    boolean isEnabled();
+
+    /**
+     * Turns collection on or off. While it is off the aggregator only checks this flag.
+     */
+    void setEnabled(boolean enabled);
+
+    String getEngine();
+
+    /**
+     * Returns the engine holding the window that last changed, e.g. the tree an 'exact' window moved to.
+     */
+    String getActiveEngine();
+
+    /**
+     * Returns the number of values held by the windows of all groups and partitions.
+     */
+    long getWindowValues();
+
+    long getEstimatedBytes();
+
+    /**
+     * Returns the number of times a window exceeded the memory budget and moved to an approximate sketch.
+     */
+    long getDegradations();
+
+    /**
+     * Returns the number of times a degraded window became exact again, because it shrank or was reset.
+     */
+    long getRecoveries();
+
+    long getAddCount();
+
+    double getAddMeanNanos();
+
+    long getAddP50Nanos();
+
+    long getAddP99Nanos();
+
+    long getRemoveCount();
+
+    double getRemoveMeanNanos();
+
+    long getRemoveP50Nanos();
+
+    long getRemoveP99Nanos();
+
+    long getReadCount();
+
+    double getReadMeanNanos();
+
+    long getReadP50Nanos();
+
+    long getReadP99Nanos();
+
+    void resetLatencies();
+}
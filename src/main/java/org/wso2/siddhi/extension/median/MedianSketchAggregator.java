@@ -0,0 +1,120 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.Base64;
+
+@Extension(
+        name = "medianSketch",
+        namespace = "stat",
+        description = "Returns a mergeable summary of the aggregated events, the logarithmic histogram of the " +
+                "'approx' engine of stat:median. Summaries of consecutive windows can be combined with " +
+                "stat:mergeMedian into the median of a longer period, or of several nodes, without reading the " +
+                "events again.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be summarized.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the summary, as for the 'approx' engine of " +
+                                "stat:median. Only summaries of the same accuracy can be merged.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "mode",
+                        description = "'eager' or 'lazy', as for stat:median. 'lazy' encodes the summary only " +
+                                "for the event a batch window emits.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' or 'global', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local"),
+                @Parameter(name = "encoding",
+                        description = "'bytes' returns the summary as a byte array object. 'base64' returns it " +
+                                "as a base64 string, which any transport and mapper can carry to another node.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "bytes")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns the summary as a byte array object or a base64 string, which " +
+                        "stat:mergeMedian reads.",
+                type = {DataType.OBJECT, DataType.STRING}),
+        examples = {
+                @Example(
+                        syntax = "from inputStream#window.timeBatch(1 sec)" +
+                                "\nselect stat:medianSketch(value, 'lazy') as sketch" +
+                                "\ninsert into secondSketchStream;",
+                        description = "This will emit a summary of the values of every second."
+                ),
+                @Example(
+                        syntax = "from inputStream#window.timeBatch(10 sec)" +
+                                "\nselect stat:medianSketch(value, 0.01, 'lazy', 'base64') as sketch" +
+                                "\ninsert into sketchPublishStream;",
+                        description = "This will emit a base64 summary of the values of every 10 seconds, " +
+                                "which a central node merges with the summaries of the other nodes."
+                )
+        }
+)
+public class MedianSketchAggregator extends OrderStatisticAggregator {
+    private boolean base64;
+
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        return 1;
+    }
+
+    protected int initOptions(ExpressionExecutor[] expressionExecutors, int index) {
+        if (index < expressionExecutors.length) {
+            String encoding = constantString(expressionExecutors[index++], "encoding").trim();
+            if ("base64".equalsIgnoreCase(encoding)) {
+                this.base64 = true;
+            } else if (!"bytes".equalsIgnoreCase(encoding)) {
+                throw new OperationNotSupportedException("Median sketch encoding '" + encoding + "' is not " +
+                        "supported, use 'bytes' or 'base64'");
+            }
+        }
+        return index;
+    }
+
+    protected String getAggregatorName() {
+        return "Median sketch";
+    }
+
+    protected String fixedEngine() {
+        return "approx";
+    }
+
+    public Attribute.Type getReturnType() {
+        return base64 ? Attribute.Type.STRING : Attribute.Type.OBJECT;
+    }
+
+    protected Object result(MedianEngine engine, Object previous) {
+        byte[] snapshot = engine.snapshot();
+        return base64 ? Base64.getEncoder().encodeToString(snapshot) : snapshot;
+    }
+}
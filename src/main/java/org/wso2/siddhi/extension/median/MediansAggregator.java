@@ -0,0 +1,164 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+@Extension(
+        name = "medians",
+        namespace = "stat",
+        description = "Returns the exact medians of several attributes of aggregated events in one aggregator, " +
+                "which costs one dispatch and one result per event instead of one for each attribute. The values " +
+                "of small windows are kept sorted in one array shared by all the attributes, and each attribute " +
+                "of a window of more than 64 events moves into an engine of its own, as for the 'exact' engine " +
+                "of stat:median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The values that need to be aggregated for their medians, one or more " +
+                                "attributes. Events where any of them is null are left out.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT})
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns a double[] holding the medians in the order of the attributes.",
+                type = {DataType.OBJECT}),
+        examples = @Example(
+                syntax = "from hostStream#window.time(1 min)" +
+                        "\nselect host, stat:medians(cpu, memory, latency) as medians" +
+                        "\ngroup by host" +
+                        "\ninsert into outputStream;",
+                description = "This will return the medians of the cpu, memory and latency of each host over the " +
+                        "last minute as one array, kept in one window per host."
+        )
+)
+public class MediansAggregator extends AttributeAggregator {
+
+    private KeyCodec[] codecs;
+    private ColumnarWindow window;
+    private long[] row;
+    private double[] medians;
+    private Object result;
+
+    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
+                        ExecutionPlanContext executionPlanContext) {
+        if (expressionExecutors.length == 0) {
+            throw new OperationNotSupportedException("Medians aggregator needs at least one value to aggregate");
+        }
+        this.codecs = new KeyCodec[expressionExecutors.length];
+        for (int i = 0; i < expressionExecutors.length; i++) {
+            if (expressionExecutors[i] instanceof ConstantExpressionExecutor) {
+                throw new OperationNotSupportedException("Medians aggregator takes attributes only, but parameter " +
+                        (i + 1) + " is a constant");
+            }
+            codecs[i] = KeyCodec.of(expressionExecutors[i].getReturnType());
+        }
+        this.window = new ColumnarWindow(codecs);
+        this.row = new long[codecs.length];
+        this.medians = new double[codecs.length];
+        this.result = medians.clone();
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.OBJECT;
+    }
+
+    public Object processAdd(Object data) {
+        return processAdd(new Object[]{data});
+    }
+
+    public Object processAdd(Object[] data) {
+        if (encode(data)) {
+            window.add(row);
+            return updateResult();
+        }
+        return result;
+    }
+
+    public Object processRemove(Object data) {
+        return processRemove(new Object[]{data});
+    }
+
+    public Object processRemove(Object[] data) {
+        if (encode(data) && window.remove(row)) {
+            return updateResult();
+        }
+        return result;
+    }
+
+    public Object reset() {
+        window.clear();
+        return updateResult();
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Result", result);
+        state.put("Columns", window.snapshot());
+        return state;
+    }
+
+    public void restoreState(Map<String, Object> state) {
+        result = state.get("Result");
+        byte[][] snapshots = (byte[][]) state.get("Columns");
+        if (snapshots != null) {
+            window.restore(snapshots);
+        }
+    }
+
+    /**
+     * Encodes the values of an event into the row, returning false when one of them is null.
+     */
+    private boolean encode(Object[] data) {
+        for (int i = 0; i < codecs.length; i++) {
+            if (data[i] == null) {
+                return false;
+            }
+            row[i] = codecs[i].encode(data[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a new array only when a median moved, since the arrays already emitted must not change.
+     */
+    private Object updateResult() {
+        window.medians(medians);
+        if (!Arrays.equals((double[]) result, medians)) {
+            result = medians.clone();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+@Extension(
+        name = "mergeMedian",
+        namespace = "stat",
+        description = "Returns the median of the values summarized by the aggregated stat:medianSketch summaries. " +
+                "Expired summaries are taken away again, so a sliding window of per second summaries gives the " +
+                "median of the last minute or hour from one counter per histogram bucket, and summaries sent by " +
+                "several nodes give the median over all of them at a cost that grows with the number of nodes " +
+                "rather than the number of events.",
+        parameters = {
+                @Parameter(name = "sketch",
+                        description = "A summary returned by stat:medianSketch, as a byte array or a base64 " +
+                                "string.",
+                        type = {DataType.OBJECT, DataType.STRING}),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the merged summary. Summaries of another accuracy " +
+                                "are counted at the buckets of the values they report, which are then within the " +
+                                "sum of both accuracies of the exact values.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "accuracy of the first summary")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns the median as a double, within the accuracy of the summaries.",
+                type = {DataType.DOUBLE}),
+        examples = {
+                @Example(
+                        syntax = "from secondSketchStream#window.length(60)" +
+                                "\nselect stat:mergeMedian(sketch) as medianOfMinute" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median of the values of the last 60 seconds from the " +
+                                "summaries of each second."
+                ),
+                @Example(
+                        syntax = "from nodeSketchStream#window.time(10 sec)" +
+                                "\nselect stat:mergeMedian(sketch, 0.01) as globalMedian" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the median of the values of all nodes from the base64 " +
+                                "summaries they publish every 10 seconds."
+                )
+        }
+)
+public class MergeMedianAggregator extends AttributeAggregator {
+
+    private double accuracy;
+    private LogHistogramSketch sketch;
+    private Object result = 0.0;
+
+    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
+                        ExecutionPlanContext executionPlanContext) {
+        if (expressionExecutors.length == 0 || expressionExecutors.length > 2) {
+            throw new OperationNotSupportedException("Merge median aggregator has to have 1 or 2 parameters, " +
+                    "currently " + expressionExecutors.length + " parameters provided");
+        }
+        Attribute.Type type = expressionExecutors[0].getReturnType();
+        if (type != Attribute.Type.OBJECT && type != Attribute.Type.STRING) {
+            throw new OperationNotSupportedException("Merge median aggregator needs a summary returned by " +
+                    "stat:medianSketch, but found " + type);
+        }
+        if (expressionExecutors.length == 2) {
+            if (!(expressionExecutors[1] instanceof ConstantExpressionExecutor) ||
+                    !(((ConstantExpressionExecutor) expressionExecutors[1]).getValue() instanceof Number)) {
+                throw new OperationNotSupportedException("Merge median aggregator's accuracy parameter has to be " +
+                        "a constant number");
+            }
+            accuracy = ((Number) ((ConstantExpressionExecutor) expressionExecutors[1]).getValue()).doubleValue();
+            if (!(accuracy > 0 && accuracy < 1)) {
+                throw new OperationNotSupportedException("Merge median accuracy has to be between 0 and 1, but " +
+                        "found " + accuracy);
+            }
+        }
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    public Object processAdd(Object data) {
+        if (data == null) {
+            return result;
+        }
+        byte[] snapshot = decode(data);
+        if (sketch == null && accuracy == 0) {
+            sketch = LogHistogramSketch.of(snapshot);
+        } else {
+            if (sketch == null) {
+                sketch = new LogHistogramSketch(KeyCodec.DOUBLE, accuracy);
+            }
+            sketch.merge(snapshot, false);
+        }
+        return updateResult();
+    }
+
+    public Object processAdd(Object[] data) {
+        return processAdd(data[0]);
+    }
+
+    public Object processRemove(Object data) {
+        if (data == null || sketch == null) {
+            return result;
+        }
+        sketch.merge(decode(data), true);
+        return updateResult();
+    }
+
+    public Object processRemove(Object[] data) {
+        return processRemove(data[0]);
+    }
+
+    public Object reset() {
+        if (sketch != null) {
+            sketch.clear();
+        }
+        return updateResult();
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Result", result);
+        state.put("Sketch", sketch == null ? null : sketch.snapshot());
+        return state;
+    }
+
+    public void restoreState(Map<String, Object> state) {
+        result = state.get("Result");
+        byte[] snapshot = (byte[]) state.get("Sketch");
+        sketch = snapshot == null ? null : LogHistogramSketch.of(snapshot);
+    }
+
+    private static byte[] decode(Object data) {
+        if (data instanceof String) {
+            try {
+                return Base64.getDecoder().decode((String) data);
+            } catch (IllegalArgumentException e) {
+                throw new OperationNotSupportedException("Merge median aggregator cannot decode a summary that " +
+                        "is not base64", e);
+            }
+        }
+        return (byte[]) data;
+    }
+
+    private Object updateResult() {
+        result = OrderStatisticAggregator.box(sketch == null ? 0.0 : sketch.median(), result);
+        return result;
+    }
+}
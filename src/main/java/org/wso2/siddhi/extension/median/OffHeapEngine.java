@@ -0,0 +1,790 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exact window storage that keeps the values off the heap, for windows of tens of millions of values. The sorted
+ * window is cut into pages of {@link #PAGE_SIZE} bytes, each holding up to {@link #PAGE_RUNS} runs of a key and
+ * its count, and the pages live in direct buffers or, when the engine is given a file, in a memory-mapped file.
+ * Only the page index stays on the heap: the slot, lowest key and value count of each page in key order, with a
+ * Fenwick tree over the counts. Adds and removes find the page in O(log pages) and shift at most a page, a full
+ * page splits in two and a page that falls below a quarter full merges into a neighbour that has room.
+ * <p>
+ * A file holds a header followed by the pages. A checkpoint stamps the header with a token and copies the file to
+ * one of two checkpoint files next to it, in turns, without passing the pages through the heap. Each page notes
+ * the checkpoint it last changed before, so only the pages changed since the checkpoint file was last written
+ * are copied, and the header last. The checkpoint file is marked as being written before its pages are, so a
+ * checkpoint cut short matches no token while the other file keeps the previous checkpoint. Resuming with a token
+ * copies the checkpoint file holding it back into the file and rebuilds only the page index, instead of decoding
+ * and sorting the window again.
+ * <p>
+ * Closing the engine frees its buffers at once through {@code sun.misc.Unsafe.invokeCleaner} on Java 9 and
+ * later, or through the buffers' own cleaners on Java 8. On a JVM that offers neither, the buffers are left to
+ * the garbage collector, which frees them when the engine is collected.
+ */
+class OffHeapEngine extends MedianEngine {
+
+    static final int PAGE_SIZE = 4096;
+    static final int PAGE_RUNS = (PAGE_SIZE - 8) / 12;
+    private static final int CHUNK_PAGES = 64;
+    private static final int CHUNK_SIZE = CHUNK_PAGES * PAGE_SIZE;
+    private static final int HEADER_SIZE = 4096;
+    private static final int MAGIC = 0x4d454449;
+    private static final int FILE_VERSION = 1;
+    // header fields
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int PAGE_SIZE_OFFSET = 8;
+    private static final int DIRTY_OFFSET = 12;
+    private static final int TOKEN_OFFSET = 16;
+    private static final int SLOTS_OFFSET = 24;
+    private static final int SIZE_OFFSET = 28;
+    private static final int CHECKPOINT_FILES = 2;
+    private static final Logger log = Logger.getLogger(OffHeapEngine.class);
+    // Unsafe.invokeCleaner, which frees a direct or mapped buffer on Java 9 and later
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            // Java 8, where buffers are freed through their own cleaner
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final File file;
+    private RandomAccessFile access;
+    private MappedByteBuffer header;
+    private final List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+    private int usedSlots;
+    private int[] freeSlots = new int[4];
+    private int freeCount;
+
+    // page index, in key order
+    private int pageCount;
+    private int[] slots = new int[4];
+    private long[] lows = new long[4];
+    private int[] counts = new int[4];
+    private int[] fenwick = new int[5];
+
+    private int size;
+    private int distinct;
+    private boolean dirty = true;
+    private long token;
+    // the checkpoint each slot's page last changed before, and the last checkpoint written to each file
+    private int[] changed = new int[4];
+    private int checkpoints = 1;
+    private final int[] written = new int[CHECKPOINT_FILES];
+
+    /**
+     * Creates an empty window in direct buffers, or in the file when one is given, replacing the window the file
+     * held.
+     */
+    OffHeapEngine(KeyCodec codec, File file) {
+        super(codec);
+        this.file = file;
+        if (file != null) {
+            try {
+                File directory = file.getAbsoluteFile().getParentFile();
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create directory " + directory);
+                }
+                access = new RandomAccessFile(file, "rw");
+                header = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            } catch (IOException e) {
+                throw new OperationNotSupportedException("Cannot map the median window file " + file, e);
+            }
+            header.putInt(MAGIC_OFFSET, MAGIC);
+            header.putInt(VERSION_OFFSET, FILE_VERSION);
+            header.putInt(PAGE_SIZE_OFFSET, PAGE_SIZE);
+            header.putInt(DIRTY_OFFSET, 1);
+            header.putInt(SIZE_OFFSET, 0);
+        }
+        pageCount = 1;
+        slots[0] = allocate();
+    }
+
+    void add(long key) {
+        markDirty();
+        int page = findPage(key);
+        int slot = slots[page];
+        int runs = runs(slot);
+        int run = search(slot, runs, key);
+        if (run >= 0) {
+            setCount(slot, run, count(slot, run) + 1);
+        } else {
+            run = -run - 1;
+            if (runs == PAGE_RUNS) {
+                // appending at the end of a page starts a new one, so ascending keys fill their pages
+                int half = run == runs ? runs : runs / 2;
+                split(page, half);
+                if (run >= half) {
+                    page++;
+                    run -= half;
+                }
+                slot = slots[page];
+                runs = runs(slot);
+            }
+            insertRun(slot, runs, run, key);
+            if (run == 0) {
+                lows[page] = key;
+            }
+            distinct++;
+        }
+        setValues(slot, ++counts[page]);
+        update(page, 1);
+        size++;
+    }
+
+    boolean remove(long key) {
+        int page = findPage(key);
+        int slot = slots[page];
+        int runs = runs(slot);
+        int run = search(slot, runs, key);
+        if (run < 0) {
+            return false;
+        }
+        markDirty();
+        int count = count(slot, run);
+        if (count > 1) {
+            setCount(slot, run, count - 1);
+        } else {
+            removeRun(slot, runs--, run);
+            if (run == 0 && runs > 0) {
+                lows[page] = key(slot, 0);
+            }
+            distinct--;
+        }
+        setValues(slot, --counts[page]);
+        update(page, -1);
+        size--;
+        if (pageCount > 1 && runs == 0) {
+            dropPage(page);
+        } else if (pageCount > 1 && runs < PAGE_RUNS / 4) {
+            mergeNeighbour(page);
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        markDirty();
+        usedSlots = 0;
+        freeCount = 0;
+        pageCount = 1;
+        slots[0] = allocate();
+        counts[0] = 0;
+        fenwick = new int[slots.length + 1];
+        size = 0;
+        distinct = 0;
+        if (header != null) {
+            header.putInt(SIZE_OFFSET, 0);
+        }
+    }
+
+    double valueAt(int rank) {
+        if (rank >= size) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " is out of the window of size " + size);
+        }
+        // descend the Fenwick tree to the page holding the rank
+        int page = 0;
+        for (int step = Integer.highestOneBit(pageCount); step > 0; step >>= 1) {
+            int next = page + step;
+            if (next <= pageCount && fenwick[next] <= rank) {
+                page = next;
+                rank -= fenwick[next];
+            }
+        }
+        int slot = slots[page];
+        for (int run = 0; ; run++) {
+            int count = count(slot, run);
+            if (rank < count) {
+                return codec.decode(key(slot, run));
+            }
+            rank -= count;
+        }
+    }
+
+    void writeTo(SnapshotOutput out) {
+        out.writeByte(SORTED_RUNS);
+        out.writeVarLong(distinct);
+        long previous = 0;
+        for (int page = 0; page < pageCount; page++) {
+            int slot = slots[page];
+            for (int run = 0, runs = runs(slot); run < runs; run++) {
+                long key = key(slot, run);
+                out.writeVarLong(key - previous);
+                out.writeVarLong(count(slot, run));
+                previous = key;
+            }
+        }
+    }
+
+    /**
+     * Fills pages three quarters full from the sorted runs, leaving room for later adds.
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format != SORTED_RUNS) {
+            super.readFrom(in, format);
+            return;
+        }
+        markDirty();
+        long runCount = in.readVarLong();
+        long key = 0;
+        int page = 0;
+        int slot = slots[0];
+        int runs = runs(slot);
+        for (long i = 0; i < runCount; i++) {
+            key += in.readVarLong();
+            int count = (int) in.readVarLong();
+            if (runs == PAGE_RUNS * 3 / 4) {
+                setRuns(slot, runs);
+                setValues(slot, counts[page]);
+                slot = allocate();
+                page = insertPage(pageCount, slot, key, 0);
+                runs = 0;
+            } else if (runs == 0) {
+                lows[page] = key;
+            }
+            putRun(slot, runs++, key, count);
+            counts[page] += count;
+            size += count;
+            distinct++;
+        }
+        setRuns(slot, runs);
+        setValues(slot, counts[page]);
+        rebuildFenwick();
+    }
+
+    /**
+     * Returns the bytes of the page index, the only part of the window on the heap.
+     */
+    long estimatedBytes() {
+        return arrayBytes(slots.length, 4) + arrayBytes(lows.length, 8) + arrayBytes(counts.length, 4) +
+                arrayBytes(fenwick.length, 4) + arrayBytes(freeSlots.length, 4) + arrayBytes(chunks.size(), 4);
+    }
+
+    /**
+     * Returns the bytes of the direct buffers or the mapped file regions holding the pages.
+     */
+    long offHeapBytes() {
+        return (long) chunks.size() * CHUNK_SIZE + (header != null ? HEADER_SIZE : 0);
+    }
+
+    File file() {
+        return file;
+    }
+
+    /**
+     * Unmaps the window file and closes it, or frees the direct buffers, instead of leaving them until the
+     * engine is collected.
+     */
+    void close() {
+        for (ByteBuffer chunk : chunks) {
+            free(chunk);
+        }
+        chunks.clear();
+        if (header != null) {
+            free(header);
+            header = null;
+        }
+        if (access != null) {
+            try {
+                access.close();
+            } catch (IOException e) {
+                log.warn("Cannot close the median window file " + file, e);
+            }
+            access = null;
+        }
+    }
+
+    /**
+     * Stamps the window file with a token and copies the pages changed since the next checkpoint file was written
+     * into it, returning the token. A window that did not change since its file was last checkpointed returns that
+     * checkpoint's token. Only windows kept in a file have checkpoints.
+     */
+    long checkpoint() {
+        if (!dirty) {
+            return token;
+        }
+        token = ThreadLocalRandom.current().nextLong();
+        int target = checkpoints % CHECKPOINT_FILES;
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            if (changedSince(chunk * CHUNK_PAGES, Math.min(usedSlots, (chunk + 1) * CHUNK_PAGES), written[target])) {
+                ((MappedByteBuffer) chunks.get(chunk)).force();
+            }
+        }
+        header.putInt(SLOTS_OFFSET, usedSlots);
+        header.putInt(SIZE_OFFSET, size);
+        header.putLong(TOKEN_OFFSET, token);
+        header.putInt(DIRTY_OFFSET, 0);
+        header.force();
+        File checkpoint = checkpointFile(file, target);
+        try {
+            RandomAccessFile output = new RandomAccessFile(checkpoint, "rw");
+            try {
+                FileChannel channel = output.getChannel();
+                ByteBuffer marker = ByteBuffer.allocate(4);
+                marker.putInt(0, 1);
+                channel.write(marker, DIRTY_OFFSET);
+                channel.force(false);
+                int from = -1;
+                for (int slot = 0; slot <= usedSlots; slot++) {
+                    boolean copy = slot < usedSlots && changed[slot] > written[target];
+                    if (copy && from < 0) {
+                        from = slot;
+                    } else if (!copy && from >= 0) {
+                        transfer(access.getChannel(), channel, HEADER_SIZE + (long) from * PAGE_SIZE,
+                                (long) (slot - from) * PAGE_SIZE);
+                        from = -1;
+                    }
+                }
+                channel.truncate(HEADER_SIZE + (long) usedSlots * PAGE_SIZE);
+                channel.force(false);
+                transfer(access.getChannel(), channel, 0, HEADER_SIZE);
+                channel.force(true);
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            written[target] = 0;
+            throw new OperationNotSupportedException("Cannot write the median window checkpoint " + checkpoint, e);
+        }
+        written[target] = checkpoints++;
+        dirty = false;
+        return token;
+    }
+
+    /**
+     * Resumes the window checkpointed with the token from a checkpoint file of the source file, which is this
+     * engine's own file or the file of a window it was shared with, returning false when the checkpoint was
+     * replaced since.
+     */
+    boolean resume(File source, long token) {
+        int index = -1;
+        File checkpoint = null;
+        try {
+            for (int i = 0; i < CHECKPOINT_FILES && index < 0; i++) {
+                checkpoint = checkpointFile(source, i);
+                if (matches(checkpoint, token)) {
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            RandomAccessFile input = new RandomAccessFile(checkpoint, "r");
+            try {
+                // in place, so that the mapped regions show the copy
+                transfer(input.getChannel(), access.getChannel(), 0, input.length());
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new OperationNotSupportedException("Cannot read the median window checkpoint " + checkpoint, e);
+        }
+        loadIndex(header.getInt(SLOTS_OFFSET));
+        if (size != header.getInt(SIZE_OFFSET)) {
+            return false;
+        }
+        this.token = token;
+        // every page differs from the checkpoint files of this engine's file, except the one resumed from
+        Arrays.fill(changed, 0, usedSlots, checkpoints);
+        Arrays.fill(written, 0);
+        this.dirty = !source.equals(file);
+        if (dirty) {
+            header.putInt(DIRTY_OFFSET, 1);
+        } else {
+            // the file resumed from is left for the checkpoint after next
+            written[index] = checkpoints++;
+            if (checkpoints % CHECKPOINT_FILES == index) {
+                checkpoints++;
+            }
+        }
+        return true;
+    }
+
+    static File checkpointFile(File file, int index) {
+        return new File(file.getPath() + ".checkpoint" + index);
+    }
+
+    private boolean changedSince(int fromSlot, int toSlot, int checkpoint) {
+        for (int slot = fromSlot; slot < toSlot; slot++) {
+            if (changed[slot] > checkpoint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(File file, long token) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        RandomAccessFile source = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer header = ByteBuffer.allocate(24);
+            source.getChannel().read(header, 0);
+            return header.getInt(MAGIC_OFFSET) == MAGIC && header.getInt(VERSION_OFFSET) == FILE_VERSION &&
+                    header.getInt(PAGE_SIZE_OFFSET) == PAGE_SIZE && header.getInt(DIRTY_OFFSET) == 0 &&
+                    header.getLong(TOKEN_OFFSET) == token;
+        } finally {
+            source.close();
+        }
+    }
+
+    private static void transfer(FileChannel from, FileChannel to, long start, long length) throws IOException {
+        for (long position = start, end = start + length; position < end; ) {
+            position += from.transferTo(position, end - position, to.position(position));
+        }
+    }
+
+    /**
+     * Rebuilds the page index from the pages of the file.
+     */
+    private void loadIndex(int slotCount) {
+        usedSlots = 0;
+        freeCount = 0;
+        pageCount = 0;
+        size = 0;
+        distinct = 0;
+        List<Integer> used = new ArrayList<Integer>();
+        for (int slot = 0; slot < slotCount; slot++) {
+            takeSlot();
+            if (runs(slot) > 0) {
+                used.add(slot);
+            } else {
+                freeSlot(slot);
+            }
+        }
+        Integer[] ordered = used.toArray(new Integer[used.size()]);
+        Arrays.sort(ordered, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                return Long.compare(key(first, 0), key(second, 0));
+            }
+        });
+        for (Integer slot : ordered) {
+            int values = values(slot);
+            insertPage(pageCount, slot, key(slot, 0), values);
+            size += values;
+            distinct += runs(slot);
+        }
+        if (pageCount == 0) {
+            insertPage(0, allocate(), 0, 0);
+        }
+        rebuildFenwick();
+    }
+
+    private void markDirty() {
+        if (!dirty) {
+            dirty = true;
+            header.putInt(DIRTY_OFFSET, 1);
+        }
+    }
+
+    /**
+     * Returns the position of the last page whose lowest key is not above the key, or the first page.
+     */
+    private int findPage(long key) {
+        int low = 1;
+        int high = pageCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lows[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Returns the run holding the key, or -(insertion point) - 1 when the page has none.
+     */
+    private int search(int slot, int runs, long key) {
+        int low = 0;
+        int high = runs - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleKey = key(slot, middle);
+            if (middleKey < key) {
+                low = middle + 1;
+            } else if (middleKey > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Moves the runs of a page from the given one on into a new page after it.
+     */
+    private void split(int page, int from) {
+        int slot = slots[page];
+        int runs = runs(slot);
+        int target = allocate();
+        int moved = 0;
+        for (int run = from; run < runs; run++) {
+            int count = count(slot, run);
+            putRun(target, run - from, key(slot, run), count);
+            moved += count;
+        }
+        setRuns(target, runs - from);
+        setRuns(slot, from);
+        counts[page] -= moved;
+        setValues(slot, counts[page]);
+        setValues(target, moved);
+        insertPage(page + 1, target, from < runs ? key(target, 0) : Long.MAX_VALUE, moved);
+        rebuildFenwick();
+    }
+
+    /**
+     * Appends a page that fell below a quarter full to its previous page, or the next page to it, when the
+     * merged page stays three quarters full at most.
+     */
+    private void mergeNeighbour(int page) {
+        int left = page + 1 < pageCount ? page : page - 1;
+        int leftSlot = slots[left];
+        int rightSlot = slots[left + 1];
+        int leftRuns = runs(leftSlot);
+        int rightRuns = runs(rightSlot);
+        if (leftRuns + rightRuns > PAGE_RUNS * 3 / 4) {
+            return;
+        }
+        for (int run = 0; run < rightRuns; run++) {
+            putRun(leftSlot, leftRuns + run, key(rightSlot, run), count(rightSlot, run));
+        }
+        setRuns(leftSlot, leftRuns + rightRuns);
+        counts[left] += counts[left + 1];
+        setValues(leftSlot, counts[left]);
+        dropPage(left + 1);
+    }
+
+    private int insertPage(int page, int slot, long low, int values) {
+        if (pageCount == slots.length) {
+            int capacity = slots.length << 1;
+            slots = Arrays.copyOf(slots, capacity);
+            lows = Arrays.copyOf(lows, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            fenwick = new int[capacity + 1];
+        }
+        System.arraycopy(slots, page, slots, page + 1, pageCount - page);
+        System.arraycopy(lows, page, lows, page + 1, pageCount - page);
+        System.arraycopy(counts, page, counts, page + 1, pageCount - page);
+        slots[page] = slot;
+        lows[page] = low;
+        counts[page] = values;
+        pageCount++;
+        return page;
+    }
+
+    private void dropPage(int page) {
+        setRuns(slots[page], 0);
+        setValues(slots[page], 0);
+        freeSlot(slots[page]);
+        pageCount--;
+        System.arraycopy(slots, page + 1, slots, page, pageCount - page);
+        System.arraycopy(lows, page + 1, lows, page, pageCount - page);
+        System.arraycopy(counts, page + 1, counts, page, pageCount - page);
+        rebuildFenwick();
+    }
+
+    private void update(int page, int delta) {
+        for (int i = page + 1; i <= pageCount; i += i & -i) {
+            fenwick[i] += delta;
+        }
+    }
+
+    private void rebuildFenwick() {
+        Arrays.fill(fenwick, 0);
+        for (int i = 1; i <= pageCount; i++) {
+            fenwick[i] += counts[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= pageCount) {
+                fenwick[parent] += fenwick[i];
+            }
+        }
+    }
+
+    /**
+     * Takes a free page slot, or the next one of the buffers, and empties its page.
+     */
+    private int allocate() {
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : takeSlot();
+        setRuns(slot, 0);
+        setValues(slot, 0);
+        return slot;
+    }
+
+    /**
+     * Takes the next slot of the buffers, mapping or allocating a new chunk as needed.
+     */
+    private int takeSlot() {
+        int slot = usedSlots++;
+        if (slot == changed.length) {
+            changed = Arrays.copyOf(changed, slot << 1);
+        }
+        if (slot / CHUNK_PAGES == chunks.size()) {
+            if (file == null) {
+                chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+            } else {
+                try {
+                    chunks.add(access.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_SIZE + (long) chunks.size() * CHUNK_SIZE, CHUNK_SIZE));
+                } catch (IOException e) {
+                    throw new OperationNotSupportedException("Cannot map the median window file " + file, e);
+                }
+            }
+        }
+        if (header != null) {
+            header.putInt(SLOTS_OFFSET, usedSlots);
+        }
+        return slot;
+    }
+
+    private static void free(ByteBuffer buffer) {
+        free(buffer, INVOKE_CLEANER);
+    }
+
+    /**
+     * Frees a direct or mapped buffer now through Unsafe.invokeCleaner, or through the buffer's own cleaner when
+     * invokeCleaner is null, as on Java 8. Returns false when the running JVM gives no way to free the buffer,
+     * which is then left to the garbage collector.
+     */
+    static boolean free(ByteBuffer buffer, Method invokeCleaner) {
+        try {
+            if (invokeCleaner != null) {
+                invokeCleaner.invoke(UNSAFE, buffer);
+                return true;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+                return true;
+            }
+        } catch (Exception e) {
+            log.debug("Cannot free a median window buffer, leaving it to the garbage collector", e);
+        }
+        return false;
+    }
+
+    private void freeSlot(int slot) {
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void insertRun(int slot, int runs, int run, long key) {
+        ByteBuffer chunk = chunks.get(slot / CHUNK_PAGES);
+        int start = runOffset(slot, run);
+        for (int offset = runOffset(slot, runs) - 4; offset >= start; offset -= 4) {
+            chunk.putInt(offset + 12, chunk.getInt(offset));
+        }
+        chunk.putLong(start, key);
+        chunk.putInt(start + 8, 1);
+        setRuns(slot, runs + 1);
+    }
+
+    private void removeRun(int slot, int runs, int run) {
+        ByteBuffer chunk = chunks.get(slot / CHUNK_PAGES);
+        for (int offset = runOffset(slot, run), end = runOffset(slot, runs) - 12; offset < end; offset += 4) {
+            chunk.putInt(offset, chunk.getInt(offset + 12));
+        }
+        setRuns(slot, runs - 1);
+    }
+
+    private void putRun(int slot, int run, long key, int count) {
+        changed[slot] = checkpoints;
+        ByteBuffer chunk = chunks.get(slot / CHUNK_PAGES);
+        int offset = runOffset(slot, run);
+        chunk.putLong(offset, key);
+        chunk.putInt(offset + 8, count);
+    }
+
+    private static int runOffset(int slot, int run) {
+        return (slot % CHUNK_PAGES) * PAGE_SIZE + 8 + run * 12;
+    }
+
+    private long key(int slot, int run) {
+        return chunks.get(slot / CHUNK_PAGES).getLong(runOffset(slot, run));
+    }
+
+    private int count(int slot, int run) {
+        return chunks.get(slot / CHUNK_PAGES).getInt(runOffset(slot, run) + 8);
+    }
+
+    private void setCount(int slot, int run, int count) {
+        changed[slot] = checkpoints;
+        chunks.get(slot / CHUNK_PAGES).putInt(runOffset(slot, run) + 8, count);
+    }
+
+    private int runs(int slot) {
+        return chunks.get(slot / CHUNK_PAGES).getInt((slot % CHUNK_PAGES) * PAGE_SIZE);
+    }
+
+    private void setRuns(int slot, int runs) {
+        changed[slot] = checkpoints;
+        chunks.get(slot / CHUNK_PAGES).putInt((slot % CHUNK_PAGES) * PAGE_SIZE, runs);
+    }
+
+    private int values(int slot) {
+        return chunks.get(slot / CHUNK_PAGES).getInt((slot % CHUNK_PAGES) * PAGE_SIZE + 4);
+    }
+
+    private void setValues(int slot, int values) {
+        changed[slot] = checkpoints;
+        chunks.get(slot / CHUNK_PAGES).putInt((slot % CHUNK_PAGES) * PAGE_SIZE + 4, values);
+    }
+}
@@ -0,0 +1,681 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.event.ComplexEvent;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.executor.VariableExpressionExecutor;
+import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Base of the aggregators that read order statistics of a window: the value to aggregate comes first, followed
+ * by the aggregator's own parameters and then by the optional engine name, accuracy, mode and scope. The engine
+ * and mode a query leaves out are read from the deployment configuration, falling back to 'auto' and 'eager'.
+ * <p>
+ * Events whose value is null are left out. Results are read from the window only when it changed since they were
+ * last read. In 'lazy' mode, which the 'batch' engine always uses, they are also read only for the last event of
+ * each run of events of one type in a chunk, since batch windows emit just that one.
+ * <p>
+ * In 'global' scope all partition and group instances of the aggregator share one {@link GlobalWindow}, and each
+ * instance counts the keys it contributed so that a reset of its own window takes out only those. Eager instances
+ * read the median the window last published when another instance is reading it, instead of waiting.
+ * <p>
+ * Each aggregator in a query registers {@link MedianMetrics} with JMX, collected when the execution plan has
+ * statistics enabled or once they are enabled through JMX.
+ */
+abstract class OrderStatisticAggregator extends AttributeAggregator {
+    static final double DEFAULT_ACCURACY = 0.01;
+
+    /**
+     * The aggregator being cloned on this thread, which Siddhi initializes the clone from within
+     * {@link #cloneAggregator(String)}.
+     */
+    private static final ThreadLocal<OrderStatisticAggregator> CLONING = new ThreadLocal<OrderStatisticAggregator>();
+
+    protected KeyCodec codec;
+    private String engineName = "auto";
+    private double accuracy = DEFAULT_ACCURACY;
+    private long[] range;
+    private SharedWindow window;
+    private long applied;
+    // the journal checkpoint of the window that the states returned so far carried, and its segments among them
+    private WindowJournal.Checkpoint emitted;
+    private int emittedSegments;
+    private String shareKey;
+    private Object lineage = new Object();
+    private boolean lazy;
+    private boolean lastOfRun = true;
+    private Object result;
+    private long resultModifications;
+    private boolean globalScope;
+    private GlobalWindow global;
+    private GlobalWindow.Contribution contribution;
+    private long memoryBudget;
+    private double degradedAccuracy = DEFAULT_ACCURACY;
+    private File offHeapDirectory;
+    private MedianMetrics metrics;
+    private boolean ownsMetrics = true;
+    private String planName;
+    private long reportedValues;
+    private long reportedBytes;
+    private int operations;
+    private boolean timing;
+
+    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
+                        ExecutionPlanContext executionPlanContext) {
+        if (expressionExecutors.length == 0) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator needs the value to " +
+                    "aggregate as its first parameter");
+        }
+        this.codec = KeyCodec.of(expressionExecutors[0].getReturnType());
+        if (configReader != null) {
+            initDefaults(configReader);
+            initBudget(configReader);
+        }
+
+        int index = initParameters(expressionExecutors);
+        if (fixedEngine() != null) {
+            engineName = fixedEngine();
+        } else if (index < expressionExecutors.length) {
+            engineName = constantString(expressionExecutors[index++], "engine").trim();
+        }
+        if (index < expressionExecutors.length && isConstantNumber(expressionExecutors[index])) {
+            if ("approx".equalsIgnoreCase(engineName)) {
+                accuracy = constantNumber(expressionExecutors[index++], "accuracy");
+                if (!(accuracy > 0 && accuracy < 1)) {
+                    throw new OperationNotSupportedException(getAggregatorName() + " accuracy has to be between 0 " +
+                            "and 1, but found " + accuracy);
+                }
+            } else if ("counting".equalsIgnoreCase(engineName)) {
+                index = initRange(expressionExecutors, index);
+            } else {
+                throw new OperationNotSupportedException(getAggregatorName() + " engine '" + engineName +
+                        "' does not take an accuracy parameter");
+            }
+        }
+        if (index < expressionExecutors.length) {
+            initMode(constantString(expressionExecutors[index++], "mode").trim());
+        }
+        this.planName = executionPlanContext.getName();
+        // clones share the lineage and metrics of the aggregator they are cloned from, which alone registers them
+        OrderStatisticAggregator parent = CLONING.get();
+        if (parent != null) {
+            this.lineage = parent.lineage;
+            this.metrics = parent.metrics;
+            this.ownsMetrics = false;
+        } else {
+            this.metrics = new MedianMetrics(engineName.toLowerCase(), executionPlanContext.isStatsEnabled());
+        }
+        if (index < expressionExecutors.length && isConstantString(expressionExecutors[index], "global")) {
+            this.globalScope = true;
+            index++;
+        } else if (index < expressionExecutors.length && isConstantString(expressionExecutors[index], "local")) {
+            index++;
+        }
+        index = initOptions(expressionExecutors, index);
+        if (index < expressionExecutors.length) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator does not take more than " +
+                    index + " parameters, currently " + expressionExecutors.length + " parameters are provided");
+        }
+
+        MedianEngine engine;
+        if (globalScope) {
+            // clones join the window of the aggregator they are cloned from, only the original creates one
+            if (parent != null) {
+                this.global = parent.global;
+            } else {
+                this.global = new GlobalWindow(createEngine());
+                metrics.share(global);
+            }
+            this.contribution = new GlobalWindow.Contribution();
+            this.lazy |= global.activeEngine() == SelectionBuffer.class;
+            // the window of an instance in 'global' scope is never written
+            engine = new CompactEngine(codec);
+        } else {
+            engine = createEngine();
+            this.lazy |= engine.active() instanceof SelectionBuffer;
+        }
+        this.window = new SharedWindow(engine);
+
+        if (expressionExecutors[0] instanceof VariableExpressionExecutor && !globalScope) {
+            VariableExpressionExecutor variable = (VariableExpressionExecutor) expressionExecutors[0];
+            this.shareKey = variable.getAttribute().getName() + Arrays.toString(variable.getPosition()) + ":" +
+                    codec + ":" + engineName.toLowerCase() + ":" + accuracy + ":" + Arrays.toString(range);
+        }
+        this.result = result(engine, null);
+    }
+
+    /**
+     * Reads the engine and mode of queries that do not choose them, and the directory of the files of 'offheap'
+     * windows, from the deployment configuration.
+     */
+    private void initDefaults(ConfigReader configReader) {
+        engineName = configReader.readConfig("engine", engineName).trim();
+        initMode(configReader.readConfig("mode", "eager").trim());
+        String directory = configReader.readConfig("offHeapDirectory", "").trim();
+        if (!directory.isEmpty()) {
+            offHeapDirectory = new File(directory);
+        }
+    }
+
+    private void initMode(String mode) {
+        if ("lazy".equalsIgnoreCase(mode)) {
+            this.lazy = true;
+        } else if ("eager".equalsIgnoreCase(mode)) {
+            this.lazy = false;
+        } else {
+            throw new OperationNotSupportedException(getAggregatorName() + " mode '" + mode + "' is not " +
+                    "supported, use 'eager' or 'lazy'");
+        }
+    }
+
+    /**
+     * Reads the memory budget of exact windows, in bytes or with a kb, mb or gb suffix, and the accuracy of the
+     * median once a window exceeds it.
+     */
+    private void initBudget(ConfigReader configReader) {
+        String budget = configReader.readConfig("memoryBudget", "").trim().toLowerCase();
+        if (budget.isEmpty()) {
+            return;
+        }
+        long unit = 1;
+        if (budget.endsWith("kb") || budget.endsWith("mb") || budget.endsWith("gb")) {
+            unit = budget.endsWith("kb") ? 1L << 10 : budget.endsWith("mb") ? 1L << 20 : 1L << 30;
+            budget = budget.substring(0, budget.length() - 2).trim();
+        }
+        try {
+            memoryBudget = Long.parseLong(budget) * unit;
+            degradedAccuracy = Double.parseDouble(configReader.readConfig("degradedAccuracy",
+                    String.valueOf(DEFAULT_ACCURACY)).trim());
+        } catch (NumberFormatException e) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator's memoryBudget and " +
+                    "degradedAccuracy configurations have to be numbers", e);
+        }
+        if (memoryBudget <= 0 || !(degradedAccuracy > 0 && degradedAccuracy < 1)) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator's memoryBudget has to be " +
+                    "positive and its degradedAccuracy between 0 and 1, but found " + memoryBudget + " bytes and " +
+                    degradedAccuracy);
+        }
+    }
+
+    /**
+     * Creates the engine, giving exact engines on the heap the memory budget when one is configured.
+     */
+    private MedianEngine createEngine() {
+        if (memoryBudget > 0 && !"approx".equalsIgnoreCase(engineName) && !"offheap".equalsIgnoreCase(engineName)) {
+            return new BudgetedEngine(new BudgetedEngine.Factory() {
+                public MedianEngine create() {
+                    return newEngine();
+                }
+            }, memoryBudget, degradedAccuracy, getAggregatorName() + " aggregator of " +
+                    "execution plan " + planName, metrics);
+        }
+        return newEngine();
+    }
+
+    private MedianEngine newEngine() {
+        if ("auto".equalsIgnoreCase(engineName)) {
+            return new AdaptiveEngine(codec);
+        } else if ("exact".equalsIgnoreCase(engineName)) {
+            return new CompactEngine(codec);
+        } else if ("batch".equalsIgnoreCase(engineName)) {
+            return new SelectionBuffer(codec);
+        } else if ("approx".equalsIgnoreCase(engineName)) {
+            return new LogHistogramSketch(codec, accuracy);
+        } else if ("counting".equalsIgnoreCase(engineName)) {
+            if (codec != KeyCodec.INT && codec != KeyCodec.LONG) {
+                throw new OperationNotSupportedException(getAggregatorName() + " engine 'counting' needs an int " +
+                        "or long value, but found " + codec.name().toLowerCase());
+            }
+            return range == null ? new CountingEngine(codec) : new CountingEngine(codec, range[0], range[1]);
+        } else if ("offheap".equalsIgnoreCase(engineName)) {
+            // in 'global' scope only the original aggregator creates an engine, the one of the global window
+            return new OffHeapEngine(codec, offHeapDirectory == null ? null : new File(new File(offHeapDirectory,
+                    fileName(planName)), fileName(elementId) + (globalScope ? ".global" : ".window")));
+        }
+        throw new OperationNotSupportedException(getAggregatorName() + " engine '" + engineName + "' is not " +
+                "supported, use 'auto', 'exact', 'batch', 'approx', 'counting' or 'offheap'");
+    }
+
+    /**
+     * Turns a plan or element id into a file name, adding the hash of ids that had to be changed.
+     */
+    private static String fileName(String id) {
+        String text = String.valueOf(id);
+        String name = text.replaceAll("[^A-Za-z0-9._-]", "_");
+        return name.equals(text) ? name : name + "-" + Integer.toHexString(text.hashCode());
+    }
+
+    /**
+     * Reads the lowest and highest value of the 'counting' engine's declared range.
+     */
+    private int initRange(ExpressionExecutor[] expressionExecutors, int index) {
+        if (index + 1 >= expressionExecutors.length || !isConstantNumber(expressionExecutors[index + 1])) {
+            throw new OperationNotSupportedException(getAggregatorName() + " engine 'counting' takes both the " +
+                    "lowest and the highest value of its range");
+        }
+        long min = (long) constantNumber(expressionExecutors[index], "min");
+        long max = (long) constantNumber(expressionExecutors[index + 1], "max");
+        if (min < -CountingEngine.MAX_MAGNITUDE || max > CountingEngine.MAX_MAGNITUDE || max < min ||
+                max - min >= CountingEngine.MAX_DECLARED_RANGE) {
+            throw new OperationNotSupportedException(getAggregatorName() + " engine 'counting' needs a lowest " +
+                    "value no greater than the highest one and a range of at most " +
+                    CountingEngine.MAX_DECLARED_RANGE + " values, but found " + min + " to " + max);
+        }
+        range = new long[]{min, max};
+        return index + 2;
+    }
+
+    /**
+     * Validates the aggregator's own parameters, which follow the value, and returns the index of the first
+     * parameter after them.
+     */
+    protected abstract int initParameters(ExpressionExecutor[] expressionExecutors);
+
+    /**
+     * Validates the aggregator's own options, which follow the mode, and returns the index of the first
+     * parameter after them.
+     */
+    protected int initOptions(ExpressionExecutor[] expressionExecutors, int index) {
+        return index;
+    }
+
+    protected abstract String getAggregatorName();
+
+    /**
+     * Returns the engine the aggregator always uses, which then takes no engine parameter, or null to let the
+     * query choose it.
+     */
+    protected String fixedEngine() {
+        return null;
+    }
+
+    /**
+     * Reads the aggregate from the window. The previous result is given so that it can be returned as is when
+     * the aggregate did not change, which saves boxing a new one.
+     */
+    protected abstract Object result(MedianEngine engine, Object previous);
+
+    /**
+     * Clones a group or partition instance, which Siddhi initializes and may start before returning it. The
+     * instance takes the lineage, metrics and global window of this aggregator while it is initialized.
+     */
+    public AttributeAggregator cloneAggregator(String key) {
+        CLONING.set(this);
+        try {
+            return super.cloneAggregator(key);
+        } finally {
+            CLONING.remove();
+        }
+    }
+
+    /**
+     * Joins a sibling's window on the first event and, in lazy mode, notes whether the event ends a run of events
+     * of its type in the chunk. Batch windows emit only the last event of such a run, so the result is left
+     * unread for the others.
+     */
+    public synchronized Object process(ComplexEvent event) {
+        if (applied == 0 && shareKey != null && window.operations == 0) {
+            SharedWindow sibling = SharedWindow.visit(event, lineage, shareKey, window);
+            if (sibling != null) {
+                // the own window was never offered to another aggregator, and may hold a restored off-heap one
+                window.close();
+                window = sibling;
+                resultModifications = -1;
+            }
+        }
+        if (lazy) {
+            ComplexEvent next = event.getNext();
+            lastOfRun = next == null || next.getType() != event.getType();
+        }
+        return super.process(event);
+    }
+
+    public Object processAdd(Object data) {
+        if (data == null) {
+            return unchanged();
+        }
+        if (!metrics.enabled) {
+            return add(data);
+        }
+        timing = ++operations % MedianMetrics.SAMPLING == 0;
+        if (!timing) {
+            Object added = add(data);
+            metrics.adds.count();
+            report();
+            return added;
+        }
+        long start = System.nanoTime();
+        Object added = add(data);
+        metrics.adds.record(System.nanoTime() - start);
+        timing = false;
+        report();
+        return added;
+    }
+
+    private Object add(Object data) {
+        long key = codec.encode(data);
+        if (globalScope) {
+            contribution.add(key);
+            global.add(key);
+            return lastOfRun ? readGlobal() : result;
+        }
+        if (applied++ == window.operations) {
+            window.engine.add(key);
+            window.modifications++;
+            if (window.journal != null) {
+                window.journal.added(key);
+            }
+            window.operations++;
+        }
+        return lastOfRun ? updateResult() : result;
+    }
+
+
+    public Object processAdd(Object[] data) {
+        return processAdd(data[0]);
+    }
+
+
+    public Object processRemove(Object data) {
+        if (data == null) {
+            return unchanged();
+        }
+        if (!metrics.enabled) {
+            return remove(data);
+        }
+        timing = ++operations % MedianMetrics.SAMPLING == 0;
+        if (!timing) {
+            Object removed = remove(data);
+            metrics.removes.count();
+            report();
+            return removed;
+        }
+        long start = System.nanoTime();
+        Object removed = remove(data);
+        metrics.removes.record(System.nanoTime() - start);
+        timing = false;
+        report();
+        return removed;
+    }
+
+    private Object remove(Object data) {
+        long key = codec.encode(data);
+        if (globalScope) {
+            if (contribution.remove(key)) {
+                global.remove(key);
+            }
+            return lastOfRun ? readGlobal() : result;
+        }
+        if (applied++ == window.operations) {
+            if (window.engine.remove(key)) {
+                window.modifications++;
+                if (window.journal != null) {
+                    window.journal.removed(key);
+                }
+            }
+            window.operations++;
+        }
+        return lastOfRun ? updateResult() : result;
+    }
+
+
+    public Object processRemove(Object[] data) {
+        return processRemove(data[0]);
+    }
+
+
+    public Object reset() {
+        Object cleared = clear();
+        if (metrics.enabled) {
+            report();
+        }
+        return cleared;
+    }
+
+    private Object clear() {
+        if (globalScope) {
+            contribution.withdraw(global);
+            return readGlobal();
+        }
+        if (applied++ == window.operations) {
+            window.engine.clear();
+            window.modifications++;
+            if (window.journal != null) {
+                window.journal.cleared();
+            }
+            window.operations++;
+        }
+        return updateResult();
+    }
+
+
+    /**
+     * Registers the metrics of the aggregator, which its group and partition instances share, with JMX.
+     */
+    public void start() {
+        if (ownsMetrics) {
+            metrics.register(getAggregatorName(), planName, elementId);
+        }
+    }
+
+
+    /**
+     * Unregisters the metrics and releases the window's off-heap memory and file. The global window belongs to
+     * the aggregator the others were cloned from.
+     */
+    public void stop() {
+        if (ownsMetrics) {
+            metrics.unregister();
+            if (globalScope) {
+                global.close();
+            }
+        }
+        window.close();
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Result", this.result);
+        if (globalScope) {
+            state.put("Contribution", contribution.snapshot());
+            return state;
+        }
+        if (this.window.engine instanceof OffHeapEngine && ((OffHeapEngine) this.window.engine).file() != null) {
+            OffHeapEngine engine = (OffHeapEngine) this.window.engine;
+            state.put("OffHeapToken", engine.checkpoint());
+            state.put("OffHeapFile", engine.file().getPath());
+            return state;
+        }
+        WindowJournal.Checkpoint checkpoint = this.window.journal().checkpoint(this.window.engine);
+        if (checkpoint != emitted) {
+            emitted = checkpoint;
+            emittedSegments = 0;
+            state.put("Window", checkpoint.base);
+        }
+        byte[][] segments = checkpoint.segments(emittedSegments);
+        state.put("WindowToken", checkpoint.token);
+        state.put("JournalOffset", emittedSegments);
+        state.put("Journal", segments);
+        emittedSegments += segments.length;
+        return state;
+    }
+
+    /**
+     * Restores the window into an engine of its own. Aggregators that shared the window restore equal copies
+     * and share again from their next event on. States without a journal restore from the window alone, and
+     * states without the window from the base their token refers to, which this process has to hold. In
+     * 'global' scope each instance replaces its contribution to the shared window. Windows kept in an off-heap
+     * file resume from the file's checkpoint.
+     */
+    public void restoreState(Map<String, Object> state) {
+        this.result = state.get("Result");
+        if (globalScope) {
+            byte[] keys = (byte[]) state.get("Contribution");
+            if (keys != null) {
+                contribution.withdraw(global);
+                contribution.restore(keys, global);
+            }
+            return;
+        }
+        Long token = (Long) state.get("OffHeapToken");
+        if (token != null) {
+            File file = new File((String) state.get("OffHeapFile"));
+            // the new engine maps the same file
+            window.close();
+            MedianEngine engine = createEngine();
+            if (!(engine instanceof OffHeapEngine) || ((OffHeapEngine) engine).file() == null) {
+                throw new OperationNotSupportedException(getAggregatorName() + " window was checkpointed in " +
+                        file + " and can only be restored into an 'offheap' engine with an offHeapDirectory");
+            }
+            if (!((OffHeapEngine) engine).resume(file, token)) {
+                throw new OperationNotSupportedException(getAggregatorName() + " window cannot be restored, " +
+                        "the checkpoint of " + file + " was replaced by a later one");
+            }
+            this.window = new SharedWindow(engine);
+            this.applied = 0;
+            this.resultModifications = -1;
+            return;
+        }
+        byte[] snapshot = (byte[]) state.get("Window");
+        Long baseToken = (Long) state.get("WindowToken");
+        if (snapshot != null || baseToken != null) {
+            Integer offset = (Integer) state.get("JournalOffset");
+            SharedWindow restored = new SharedWindow(createEngine());
+            if (!restored.journal().restore(restored.engine, baseToken, snapshot, offset == null ? 0 : offset,
+                    (byte[][]) state.get("Journal"))) {
+                restored.close();
+                throw new OperationNotSupportedException(getAggregatorName() + " window cannot be restored, the " +
+                        "base checkpoint it was taken against is not held by this process or was replaced by a " +
+                        "later one");
+            }
+            window.close();
+            this.window = restored;
+            this.emitted = null;
+            this.applied = 0;
+            this.resultModifications = -1;
+        }
+    }
+
+    /**
+     * Boxes the value unless the previous result already holds it.
+     */
+    protected static Object box(double value, Object previous) {
+        if (previous instanceof Double &&
+                Double.doubleToRawLongBits((Double) previous) == Double.doubleToRawLongBits(value)) {
+            return previous;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the result for an event whose value is null, which is left out. Lazy instances read it when the
+     * event ends its run, since the events before it in the run left it unread.
+     */
+    private Object unchanged() {
+        if (!lastOfRun) {
+            return result;
+        }
+        return globalScope ? readGlobal() : updateResult();
+    }
+
+    private Object updateResult() {
+        if (resultModifications != window.modifications) {
+            if (timing) {
+                long start = System.nanoTime();
+                result = result(window.engine, result);
+                metrics.reads.record(System.nanoTime() - start);
+            } else {
+                result = result(window.engine, result);
+                if (metrics.enabled) {
+                    metrics.reads.count();
+                }
+            }
+            resultModifications = window.modifications;
+        }
+        return result;
+    }
+
+    private Object readGlobal() {
+        if (timing) {
+            long start = System.nanoTime();
+            result = global.read(this, lazy);
+            metrics.reads.record(System.nanoTime() - start);
+        } else {
+            result = global.read(this, lazy);
+            if (metrics.enabled) {
+                metrics.reads.count();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports how the window changed since this instance last reported. A global window is read by the metrics
+     * directly.
+     */
+    private void report() {
+        if (globalScope) {
+            return;
+        }
+        MedianEngine engine = window.engine;
+        long values = engine.count();
+        long bytes = engine.estimatedBytes();
+        metrics.report(engine.active(), values - reportedValues, bytes - reportedBytes);
+        reportedValues = values;
+        reportedBytes = bytes;
+    }
+
+    private static boolean isConstantString(ExpressionExecutor executor, String value) {
+        if (!(executor instanceof ConstantExpressionExecutor) ||
+                !(((ConstantExpressionExecutor) executor).getValue() instanceof String)) {
+            return false;
+        }
+        return value.equalsIgnoreCase(((String) ((ConstantExpressionExecutor) executor).getValue()).trim());
+    }
+
+    private static boolean isConstantNumber(ExpressionExecutor executor) {
+        return executor instanceof ConstantExpressionExecutor &&
+                ((ConstantExpressionExecutor) executor).getValue() instanceof Number;
+    }
+
+    protected String constantString(ExpressionExecutor executor, String name) {
+        if (!(executor instanceof ConstantExpressionExecutor) || executor.getReturnType() != Attribute.Type.STRING) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator's " + name + " parameter " +
+                    "has to be a constant string");
+        }
+        return (String) ((ConstantExpressionExecutor) executor).getValue();
+    }
+
+    protected double constantNumber(ExpressionExecutor executor, String name) {
+        if (!(executor instanceof ConstantExpressionExecutor) ||
+                !(((ConstantExpressionExecutor) executor).getValue() instanceof Number)) {
+            throw new OperationNotSupportedException(getAggregatorName() + " aggregator's " + name + " parameter " +
+                    "has to be a constant number");
+        }
+        return ((Number) ((ConstantExpressionExecutor) executor).getValue()).doubleValue();
+    }
+}
@@ -0,0 +1,509 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.Arrays;
+
+/**
+ * AVL tree holding the keys of a window in sorted order. Each node keeps the multiplicity of its key and the
+ * number of keys in its subtree, so add, remove and select by rank are all O(log n).
+ * <p>
+ * Nodes live in parallel primitive arrays indexed by node id, so once the arrays have grown to the number of
+ * distinct keys the tree does not allocate. Node 0 is a sentinel standing for an empty subtree.
+ * <p>
+ * A key is removed by decrementing its node in place and fixing the subtree sizes above it through parent links,
+ * without rebalancing. A node left with no keys stays in the tree as a tombstone that a later add of its key
+ * revives, and once tombstones outnumber the live nodes the tree is rebuilt without them in O(n).
+ * <p>
+ * Length and time windows expire values in the order they arrived, so the tree remembers the nodes of the keys
+ * it adds in a ring, as runs of keys added one after the other to the same node, and finds the node of the key to
+ * remove at the head of the ring without searching. The first removal that does not match the head of the ring
+ * turns it off until the tree is cleared, and so does a ring that would hold more than {@link #RUNS_PER_NODE}
+ * runs a node, so that a window of few distinct keys arriving in no order keeps memory in proportion to its
+ * distinct keys.
+ * <p>
+ * Subclasses can keep more about the keys of each node, like {@link WeightedTree} keeps their weights, by
+ * overriding the hooks called as counts change, nodes are recomputed and the arrays grow or move.
+ */
+class OrderStatisticTree extends MedianEngine {
+
+    static final int NIL = 0;
+    static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_TOMBSTONES = 64;
+    private static final int RUNS_PER_NODE = 4;
+
+    private long[] keys;
+    private int[] counts;
+    private int[] sizes;
+    private int[] left;
+    private int[] right;
+    private int[] parents;
+    private byte[] heights;
+
+    private int root = NIL;
+    private int next = 1;
+    private int nodeCount;
+    private int tombstones;
+    private int lastNode;
+
+    // nodes of the keys in arrival order and the number of keys in each run, null once the ring is off
+    private int[] ring = new int[INITIAL_CAPACITY];
+    private int[] runs = new int[INITIAL_CAPACITY];
+    private int ringHead;
+    private int ringTail;
+    // keys loaded in bulk, which are older than any key in the ring
+    private int untracked;
+
+    OrderStatisticTree(KeyCodec codec) {
+        super(codec);
+        keys = new long[INITIAL_CAPACITY];
+        counts = new int[INITIAL_CAPACITY];
+        sizes = new int[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        heights = new byte[INITIAL_CAPACITY];
+    }
+
+    void add(long key) {
+        root = insert(root, key);
+        parents[root] = NIL;
+        if (ring != null) {
+            int last = (ringTail - 1) & (ring.length - 1);
+            if (ringTail != ringHead && ring[last] == lastNode) {
+                runs[last]++;
+                return;
+            }
+            if (ringTail - ringHead == ring.length && !growRing()) {
+                return;
+            }
+            int slot = ringTail++ & (ring.length - 1);
+            ring[slot] = lastNode;
+            runs[slot] = 1;
+        }
+    }
+
+    boolean remove(long key) {
+        if (ring != null && untracked == 0 && ringHead != ringTail) {
+            int slot = ringHead & (ring.length - 1);
+            int node = ring[slot];
+            if (node != NIL && keys[node] == key && counts[node] > 0) {
+                if (--runs[slot] == 0) {
+                    ringHead++;
+                }
+                expire(node);
+                return true;
+            }
+            dropRing();
+        }
+        int node = find(key);
+        if (node == NIL || counts[node] == 0) {
+            return false;
+        }
+        if (untracked > 0) {
+            untracked--;
+        }
+        expire(node);
+        return true;
+    }
+
+    int size() {
+        return sizes[root];
+    }
+
+    /**
+     * Returns the number of distinct keys.
+     */
+    int distinct() {
+        return nodeCount - tombstones;
+    }
+
+    void clear() {
+        root = NIL;
+        next = 1;
+        nodeCount = 0;
+        tombstones = 0;
+        resetRing(0);
+    }
+
+    double valueAt(int rank) {
+        return codec.decode(select(rank));
+    }
+
+    /**
+     * Returns the key at the given zero based position of the sorted window.
+     */
+    long select(int rank) {
+        int node = root;
+        while (node != NIL) {
+            int leftSize = sizes[left[node]];
+            if (rank < leftSize) {
+                node = left[node];
+            } else if (rank < leftSize + counts[node]) {
+                return keys[node];
+            } else {
+                rank -= leftSize + counts[node];
+                node = right[node];
+            }
+        }
+        throw new IndexOutOfBoundsException("Rank " + rank + " is out of the window of size " + size());
+    }
+
+    void writeTo(SnapshotOutput out) {
+        out.writeByte(SORTED_RUNS);
+        out.writeVarLong(distinct());
+        int[] stack = new int[heights[root] + 1];
+        int depth = 0;
+        int node = root;
+        long previous = 0;
+        while (node != NIL || depth > 0) {
+            while (node != NIL) {
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            if (counts[node] > 0) {
+                out.writeVarLong(keys[node] - previous);
+                out.writeVarLong(counts[node]);
+                previous = keys[node];
+            }
+            node = right[node];
+        }
+    }
+
+    /**
+     * Reads sorted runs straight into nodes 1 to n and links them into a balanced tree in O(n).
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format != SORTED_RUNS) {
+            super.readFrom(in, format);
+            return;
+        }
+        int distinct = (int) in.readVarLong();
+        ensureCapacity(distinct);
+        long key = 0;
+        for (int node = 1; node <= distinct; node++) {
+            key += in.readVarLong();
+            keys[node] = key;
+            counts[node] = (int) in.readVarLong();
+        }
+        build(distinct);
+        resetRing(size());
+    }
+
+    /**
+     * Replaces the contents with the given distinct keys, in ascending order, and their counts, in O(n).
+     */
+    void load(long[] runKeys, int[] runCounts, int distinct) {
+        clear();
+        ensureCapacity(distinct);
+        System.arraycopy(runKeys, 0, keys, 1, distinct);
+        System.arraycopy(runCounts, 0, counts, 1, distinct);
+        build(distinct);
+        resetRing(size());
+    }
+
+    /**
+     * Copies the distinct keys in ascending order and their counts into the arrays, which have to hold at least
+     * {@link #distinct()} entries. Given a remap array, it also records the position of each live node counting
+     * from 1, which is its id once the runs are loaded back.
+     */
+    void copyRuns(long[] runKeys, int[] runCounts) {
+        copyRuns(runKeys, runCounts, null);
+    }
+
+    private void copyRuns(long[] runKeys, int[] runCounts, int[] remap) {
+        int[] stack = new int[heights[root] + 1];
+        int depth = 0;
+        int node = root;
+        int run = 0;
+        while (node != NIL || depth > 0) {
+            while (node != NIL) {
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            if (counts[node] > 0) {
+                runKeys[run] = keys[node];
+                runCounts[run++] = counts[node];
+                if (remap != null) {
+                    remap[node] = run;
+                }
+            }
+            node = right[node];
+        }
+    }
+
+    long estimatedBytes() {
+        return arrayBytes(keys.length, 8) + 5 * arrayBytes(keys.length, 4) + arrayBytes(keys.length, 1) +
+                (ring == null ? 0 : 2 * arrayBytes(ring.length, 4));
+    }
+
+    /**
+     * Called after a key was added to or removed from the node and its count changed, by one. A node that had a
+     * count of zero before an add is new or a revived tombstone.
+     */
+    void counted(int node, int change) {
+    }
+
+    /**
+     * Called after the node was recomputed from its children, or its own count changed.
+     */
+    void updated(int node) {
+    }
+
+    /**
+     * Called after the node arrays grew to the capacity.
+     */
+    void grown(int capacity) {
+    }
+
+    /**
+     * Called when a compaction moves each live node to remap[node], before the tree is rebuilt from them.
+     */
+    void moved(int[] remap) {
+    }
+
+    int root() {
+        return root;
+    }
+
+    int left(int node) {
+        return left[node];
+    }
+
+    int right(int node) {
+        return right[node];
+    }
+
+    long key(int node) {
+        return keys[node];
+    }
+
+    int count(int node) {
+        return counts[node];
+    }
+
+    /**
+     * Takes a key out of its node, leaving a tombstone when it was the last one.
+     */
+    private void expire(int node) {
+        counts[node]--;
+        counted(node, -1);
+        for (int ancestor = node; ancestor != NIL; ancestor = parents[ancestor]) {
+            sizes[ancestor]--;
+            updated(ancestor);
+        }
+        if (counts[node] == 0 && ++tombstones >= MIN_TOMBSTONES && tombstones > nodeCount - tombstones) {
+            compact();
+        }
+    }
+
+    /**
+     * Rebuilds the tree without its tombstones and points the ring, when it is on, at the new nodes.
+     */
+    private void compact() {
+        int distinct = distinct();
+        long[] runKeys = new long[distinct];
+        int[] runCounts = new int[distinct];
+        int[] remap = new int[next];
+        copyRuns(runKeys, runCounts, remap);
+        tombstones = 0;
+        System.arraycopy(runKeys, 0, keys, 1, distinct);
+        System.arraycopy(runCounts, 0, counts, 1, distinct);
+        moved(remap);
+        build(distinct);
+        if (ring == null) {
+            return;
+        }
+        for (int i = ringHead; i != ringTail; i++) {
+            int slot = i & (ring.length - 1);
+            ring[slot] = remap[ring[slot]];
+        }
+    }
+
+    private void build(int distinct) {
+        next = distinct + 1;
+        nodeCount = distinct;
+        root = build(1, distinct);
+        parents[root] = NIL;
+    }
+
+    private int build(int from, int to) {
+        if (from > to) {
+            return NIL;
+        }
+        int node = (from + to) >>> 1;
+        left[node] = build(from, node - 1);
+        right[node] = build(node + 1, to);
+        update(node);
+        return node;
+    }
+
+    private int insert(int node, long key) {
+        if (node == NIL) {
+            return newNode(key);
+        }
+        if (key < keys[node]) {
+            int child = insert(left[node], key);
+            left[node] = child;
+        } else if (key > keys[node]) {
+            int child = insert(right[node], key);
+            right[node] = child;
+        } else {
+            if (counts[node]++ == 0) {
+                tombstones--;
+            }
+            sizes[node]++;
+            counted(node, 1);
+            updated(node);
+            lastNode = node;
+            return node;
+        }
+        return balance(node);
+    }
+
+    private int find(long key) {
+        int node = root;
+        while (node != NIL && keys[node] != key) {
+            node = key < keys[node] ? left[node] : right[node];
+        }
+        return node;
+    }
+
+    private int balance(int node) {
+        update(node);
+        int factor = heights[left[node]] - heights[right[node]];
+        if (factor > 1) {
+            if (heights[left[left[node]]] < heights[right[left[node]]]) {
+                left[node] = rotateLeft(left[node]);
+            }
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (heights[right[right[node]]] < heights[left[right[node]]]) {
+                right[node] = rotateRight(right[node]);
+            }
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private int rotateRight(int node) {
+        int pivot = left[node];
+        left[node] = right[pivot];
+        right[pivot] = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private int rotateLeft(int node) {
+        int pivot = right[node];
+        right[node] = left[pivot];
+        left[pivot] = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    /**
+     * Recomputes the node from its children and links them back to it. The sentinel's parent is overwritten
+     * freely, it is never read.
+     */
+    private void update(int node) {
+        sizes[node] = sizes[left[node]] + sizes[right[node]] + counts[node];
+        heights[node] = (byte) (Math.max(heights[left[node]], heights[right[node]]) + 1);
+        parents[left[node]] = node;
+        parents[right[node]] = node;
+        updated(node);
+    }
+
+    private int newNode(long key) {
+        if (next == keys.length) {
+            grow();
+        }
+        int node = next++;
+        nodeCount++;
+        keys[node] = key;
+        counts[node] = 1;
+        sizes[node] = 1;
+        heights[node] = 1;
+        left[node] = NIL;
+        right[node] = NIL;
+        counted(node, 1);
+        updated(node);
+        lastNode = node;
+        return node;
+    }
+
+    private void resetRing(int loaded) {
+        if (ring == null) {
+            ring = new int[INITIAL_CAPACITY];
+            runs = new int[INITIAL_CAPACITY];
+        }
+        ringHead = 0;
+        ringTail = 0;
+        untracked = loaded;
+    }
+
+    private void dropRing() {
+        ring = null;
+        runs = null;
+    }
+
+    /**
+     * Doubles the ring, or turns it off when it holds as many runs a node as it may.
+     */
+    private boolean growRing() {
+        if (ring.length >= RUNS_PER_NODE * Math.max(nodeCount, INITIAL_CAPACITY)) {
+            dropRing();
+            return false;
+        }
+        int[] grownRing = new int[ring.length << 1];
+        int[] grownRuns = new int[ring.length << 1];
+        for (int i = ringHead; i != ringTail; i++) {
+            grownRing[i - ringHead] = ring[i & (ring.length - 1)];
+            grownRuns[i - ringHead] = runs[i & (ring.length - 1)];
+        }
+        ringTail -= ringHead;
+        ringHead = 0;
+        ring = grownRing;
+        runs = grownRuns;
+        return true;
+    }
+
+    private void ensureCapacity(int nodes) {
+        if (keys.length <= nodes) {
+            grow(Integer.highestOneBit(nodes) << 1);
+        }
+    }
+
+    private void grow() {
+        grow(keys.length << 1);
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        grown(capacity);
+    }
+}
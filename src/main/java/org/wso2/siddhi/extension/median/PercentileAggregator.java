@@ -0,0 +1,102 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+@Extension(
+        name = "percentile",
+        namespace = "stat",
+        description = "Returns the p-th percentile of aggregated events, interpolating linearly between the two " +
+                "closest ranks. Percentiles and medians of the same attribute selected with the same engine in " +
+                "one query share a single window. The engine, mode, memoryBudget, degradedAccuracy and " +
+                "offHeapDirectory properties of the extension apply as for stat:median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the percentile.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "p",
+                        description = "The percentile to return, from 0 to 100.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "engine",
+                        description = "The engine used to keep the window, 'auto', 'exact', 'batch', 'approx', " +
+                                "'counting' or 'offheap', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "auto"),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the 'approx' engine.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "mode",
+                        description = "'eager' or 'lazy', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' or 'global', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns double for all data types. ie int, long, double and float",
+                type = {DataType.DOUBLE}),
+        examples = @Example(
+                syntax = "from latencyStream#window.time(1 min)" +
+                        "\nselect stat:percentile(latency, 95) as p95, stat:percentile(latency, 99) as p99" +
+                        "\ninsert into outputStream;",
+                description = "This will return the 95th and 99th percentiles of the latencies of the last " +
+                        "minute, both read from one window."
+        )
+)
+public class PercentileAggregator extends OrderStatisticAggregator {
+    private double quantile;
+
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        if (expressionExecutors.length < 2) {
+            throw new OperationNotSupportedException("Percentile aggregator needs the percentile as its second " +
+                    "parameter");
+        }
+        double percentile = constantNumber(expressionExecutors[1], "percentile");
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new OperationNotSupportedException("Percentile has to be between 0 and 100, but found " +
+                    percentile);
+        }
+        this.quantile = percentile / 100;
+        return 2;
+    }
+
+    protected String getAggregatorName() {
+        return "Percentile";
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    protected Object result(MedianEngine engine, Object previous) {
+        return box(engine.quantile(quantile), previous);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ConstantExpressionExecutor;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.Arrays;
+
+@Extension(
+        name = "quantiles",
+        namespace = "stat",
+        description = "Returns several quantiles of aggregated events at once, read from a single window. The " +
+                "engine, mode, memoryBudget, degradedAccuracy and offHeapDirectory properties of the extension " +
+                "apply as for stat:median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the quantiles.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "q",
+                        description = "One or more quantiles to return, each from 0 to 1.",
+                        type = {DataType.DOUBLE, DataType.FLOAT, DataType.INT}),
+                @Parameter(name = "engine",
+                        description = "The engine used to keep the window, 'auto', 'exact', 'batch', 'approx', " +
+                                "'counting' or 'offheap', as for stat:median. It follows the last quantile.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "auto"),
+                @Parameter(name = "accuracy",
+                        description = "Relative accuracy of the 'approx' engine.",
+                        type = {DataType.DOUBLE, DataType.FLOAT},
+                        optional = true,
+                        defaultValue = "0.01"),
+                @Parameter(name = "mode",
+                        description = "'eager' or 'lazy', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "eager"),
+                @Parameter(name = "scope",
+                        description = "'local' or 'global', as for stat:median.",
+                        type = {DataType.STRING},
+                        optional = true,
+                        defaultValue = "local")
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns a double[] holding the quantiles in the order they were asked for.",
+                type = {DataType.OBJECT}),
+        examples = @Example(
+                syntax = "from latencyStream#window.length(10000)" +
+                        "\nselect stat:quantiles(latency, 0.5, 0.9, 0.99) as latencyQuantiles" +
+                        "\ninsert into outputStream;",
+                description = "This will return the median, 90th and 99th percentiles of the last 10000 " +
+                        "latencies as a double[] of three values."
+        )
+)
+public class QuantilesAggregator extends OrderStatisticAggregator {
+    private double[] quantiles;
+
+    protected int initParameters(ExpressionExecutor[] expressionExecutors) {
+        int count = 0;
+        while (count + 1 < expressionExecutors.length &&
+                expressionExecutors[count + 1] instanceof ConstantExpressionExecutor &&
+                expressionExecutors[count + 1].getReturnType() != Attribute.Type.STRING) {
+            count++;
+        }
+        if (count == 0) {
+            throw new OperationNotSupportedException("Quantiles aggregator needs at least one quantile after the " +
+                    "value");
+        }
+        quantiles = new double[count];
+        for (int i = 0; i < count; i++) {
+            quantiles[i] = constantNumber(expressionExecutors[i + 1], "quantile");
+            if (!(quantiles[i] >= 0 && quantiles[i] <= 1)) {
+                throw new OperationNotSupportedException("Quantiles have to be between 0 and 1, but found " +
+                        quantiles[i]);
+            }
+        }
+        return count + 1;
+    }
+
+    protected String getAggregatorName() {
+        return "Quantiles";
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.OBJECT;
+    }
+
+    /**
+     * Returns a new array only when a quantile moved, since the arrays already emitted must not change.
+     */
+    protected Object result(MedianEngine engine, Object previous) {
+        double[] values = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            values[i] = engine.quantile(quantiles[i]);
+        }
+        if (previous != null && Arrays.equals((double[]) previous, values)) {
+            return previous;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.Arrays;
+
+/**
+ * Unordered key buffer for batch windows. Adds are O(1) appends and the median is found with an introselect
+ * over the buffer, O(n) on average, only when it is asked for. Removals are queued and applied in one pass the
+ * next time the buffer is read, since batch windows expire a whole batch at once. A removal is refused only when
+ * its key lies outside the range of the buffer's keys, and one that matches no key when applied is kept for the
+ * next pass, like the global window keeps a removal that arrives before the add it undoes.
+ */
+class SelectionBuffer extends MedianEngine {
+
+    private static final int INITIAL_CAPACITY = 4;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    // an unsorted buffer is sorted before removals when they are at least 1/256 of it
+    private static final int SORTED_MERGE_SHIFT = 8;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int size;
+    private long lowest = Long.MAX_VALUE;
+    private long highest = Long.MIN_VALUE;
+    private long[] removals = new long[INITIAL_CAPACITY];
+    private int[] removalCounts = new int[INITIAL_CAPACITY];
+    private int removalCount;
+    // removals kept from the last pass, which can only match keys added since
+    private int unmatched;
+    private int sizeAfterRemovals;
+    // set while the buffer is fully sorted, when keys are read by position without selecting them
+    private boolean sorted = true;
+
+    SelectionBuffer(KeyCodec codec) {
+        super(codec);
+    }
+
+    void add(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size++] = key;
+        sorted = false;
+        lowest = Math.min(lowest, key);
+        highest = Math.max(highest, key);
+    }
+
+    boolean remove(long key) {
+        if (key < lowest || key > highest) {
+            return false;
+        }
+        if (removalCount == removals.length) {
+            removals = Arrays.copyOf(removals, removalCount << 1);
+            removalCounts = new int[removals.length];
+        }
+        removals[removalCount++] = key;
+        return true;
+    }
+
+    int size() {
+        applyRemovals();
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+        removalCount = 0;
+        unmatched = 0;
+        sorted = true;
+        lowest = Long.MAX_VALUE;
+        highest = Long.MIN_VALUE;
+    }
+
+    double valueAt(int rank) {
+        applyRemovals();
+        return codec.decode(select(rank));
+    }
+
+    double median() {
+        applyRemovals();
+        if (size == 0) {
+            return 0.0;
+        }
+        int midPointA = size / 2;
+        long upper = select(midPointA);
+        if (size % 2 == 0) {
+            // select leaves every key below midPointA no greater than the selected one
+            long lower = keys[0];
+            for (int i = 1; i < midPointA; i++) {
+                if (keys[i] > lower) {
+                    lower = keys[i];
+                }
+            }
+            return (codec.decode(upper) + codec.decode(lower)) / 2.0;
+        }
+        return codec.decode(upper);
+    }
+
+    /**
+     * Sorts the buffer once, after which the O(log n) reads of the deviation take constant time each.
+     */
+    double medianAbsoluteDeviation() {
+        sort();
+        return super.medianAbsoluteDeviation();
+    }
+
+    void writeTo(SnapshotOutput out) {
+        sort();
+        writeSortedRuns(out, keys, size);
+    }
+
+    long estimatedBytes() {
+        return arrayBytes(keys.length, 8) + arrayBytes(removals.length, 8) + arrayBytes(removalCounts.length, 4);
+    }
+
+    /**
+     * Partially orders the buffer so that the key at position k is the k-th smallest and returns it.
+     */
+    private long select(int k) {
+        if (sorted) {
+            return keys[k];
+        }
+        int lo = 0;
+        int hi = size - 1;
+        int depthLimit = 2 * (32 - Integer.numberOfLeadingZeros(size));
+        while (hi > lo) {
+            if (hi - lo < INSERTION_SORT_THRESHOLD || depthLimit-- == 0) {
+                Arrays.sort(keys, lo, hi + 1);
+                return keys[k];
+            }
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < keys[lo]) {
+                swap(lo, mid);
+            }
+            if (keys[hi] < keys[lo]) {
+                swap(lo, hi);
+            }
+            if (keys[hi] < keys[mid]) {
+                swap(mid, hi);
+            }
+            long pivot = keys[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return keys[k];
+            }
+        }
+        return keys[k];
+    }
+
+    /**
+     * Takes the queued removals out of the buffer in one pass that keeps the order of the remaining keys. A sorted
+     * buffer is merged with the sorted removals, and an unsorted one looks each key up among the distinct removed
+     * keys when they are few. Many removals, like the expiry of a whole batch, are cheaper to merge with the buffer
+     * sorted first, which also leaves the later reads without a selection.
+     */
+    private void applyRemovals() {
+        if (removalCount == unmatched && (unmatched == 0 || size == sizeAfterRemovals)) {
+            return;
+        }
+        Arrays.sort(removals, 0, removalCount);
+        if (!sorted && removalCount >= size >> SORTED_MERGE_SHIFT) {
+            Arrays.sort(keys, 0, size);
+            sorted = true;
+        }
+        int distinct = 0;
+        for (int i = 0; i < removalCount; i++) {
+            if (distinct > 0 && removals[i] == removals[distinct - 1]) {
+                removalCounts[distinct - 1]++;
+            } else {
+                removals[distinct] = removals[i];
+                removalCounts[distinct++] = 1;
+            }
+        }
+        long first = removals[0];
+        long last = removals[distinct - 1];
+        lowest = Long.MAX_VALUE;
+        highest = Long.MIN_VALUE;
+        int kept = 0;
+        int removal = 0;
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            if (sorted) {
+                while (removal < distinct && removals[removal] < key) {
+                    removal++;
+                }
+            } else {
+                removal = key < first || key > last ? -1 : Arrays.binarySearch(removals, 0, distinct, key);
+            }
+            if (removal >= 0 && removal < distinct && removals[removal] == key && removalCounts[removal] > 0) {
+                removalCounts[removal]--;
+            } else {
+                keys[kept++] = key;
+                lowest = Math.min(lowest, key);
+                highest = Math.max(highest, key);
+            }
+        }
+        size = kept;
+        sizeAfterRemovals = kept;
+        retainUnmatched(distinct);
+    }
+
+    /**
+     * Queues the removals that matched no key again, most likely ones that arrived before their add.
+     */
+    private void retainUnmatched(int distinct) {
+        unmatched = 0;
+        for (int i = 0; i < distinct; i++) {
+            unmatched += removalCounts[i];
+        }
+        removalCount = 0;
+        if (unmatched == 0) {
+            return;
+        }
+        long[] retained = new long[unmatched];
+        for (int i = 0; i < distinct; i++) {
+            for (int count = removalCounts[i]; count > 0; count--) {
+                retained[removalCount++] = removals[i];
+            }
+        }
+        System.arraycopy(retained, 0, removals, 0, unmatched);
+    }
+
+    private void sort() {
+        applyRemovals();
+        if (!sorted) {
+            Arrays.sort(keys, 0, size);
+            sorted = true;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+    }
+}
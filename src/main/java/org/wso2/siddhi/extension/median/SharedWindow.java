@@ -0,0 +1,102 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.event.ComplexEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A window engine that can be shared by the order statistic aggregators of one query that select the same
+ * attribute with the same engine, e.g. stat:median(v), stat:percentile(v, 90) and stat:percentile(v, 99).
+ * <p>
+ * Such aggregators are called one after the other with the same event, so they stay in lockstep: every
+ * participant counts the operations it has been asked to do and only the first one to reach an operation applies
+ * it to the engine. Siblings find each other on their very first event, when the aggregators processed before
+ * them for the same event offered their windows on the current thread.
+ */
+final class SharedWindow {
+
+    private static final ThreadLocal<Pass> PASS = new ThreadLocal<Pass>() {
+        @Override
+        protected Pass initialValue() {
+            return new Pass();
+        }
+    };
+
+    final MedianEngine engine;
+    WindowJournal journal;
+    long operations;
+    // operations that changed the engine, results read before the last one are out of date
+    long modifications;
+
+    SharedWindow(MedianEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Returns the checkpoint journal, which windows that are never checkpointed do without.
+     */
+    WindowJournal journal() {
+        if (journal == null) {
+            journal = new WindowJournal();
+        }
+        return journal;
+    }
+
+    /**
+     * Releases the engine's off-heap memory and file and keeps the journal's bases for a later restore.
+     */
+    void close() {
+        engine.close();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Records that an aggregator is about to process its first event and returns the window of a sibling that
+     * started with the same event, or null when there is none and the aggregator's own window was offered.
+     */
+    static SharedWindow visit(ComplexEvent event, Object lineage, String shareKey, SharedWindow window) {
+        Pass pass = PASS.get();
+        if (pass.event != event || pass.lineages.contains(lineage)) {
+            // a new pass, also when Siddhi reused the event object, since an aggregator sees an event only once
+            pass.event = event;
+            pass.lineages.clear();
+            pass.shareKeys.clear();
+            pass.windows.clear();
+        }
+        pass.lineages.add(lineage);
+        for (int i = 0; i < pass.shareKeys.size(); i++) {
+            SharedWindow sibling = pass.windows.get(i);
+            if (pass.shareKeys.get(i).equals(shareKey) && sibling.operations == 1) {
+                return sibling;
+            }
+        }
+        pass.shareKeys.add(shareKey);
+        pass.windows.add(window);
+        return null;
+    }
+
+    private static final class Pass {
+        private ComplexEvent event;
+        private final List<Object> lineages = new ArrayList<Object>();
+        private final List<String> shareKeys = new ArrayList<String>();
+        private final List<SharedWindow> windows = new ArrayList<SharedWindow>();
+    }
+}
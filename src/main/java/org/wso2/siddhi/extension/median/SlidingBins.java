@@ -0,0 +1,138 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+/**
+ * Dense buckets over a sliding range of at most {@link #MAX_BINS} indexes, the storage behind the log bucket
+ * sketches. The buckets in range are kept in arrays starting at an offset, with room left on both sides for the
+ * range to grow. When the indexes span more than MAX_BINS buckets the lowest ones are folded into the lowest kept
+ * bucket. Subclasses hold what the buckets count, the values of a window or decaying weights, and move it when the
+ * range is laid out anew.
+ */
+abstract class SlidingBins {
+
+    static final int MAX_BINS = 2048;
+    private static final int INITIAL_CAPACITY = 32;
+
+    protected int offset;
+    protected int minIndex = Integer.MAX_VALUE;
+    protected int maxIndex = Integer.MIN_VALUE;
+
+    /**
+     * Returns whether no bucket holds anything, in which case the range is empty too.
+     */
+    abstract boolean isEmpty();
+
+    /**
+     * Returns the length of the arrays holding the buckets.
+     */
+    abstract int capacity();
+
+    /**
+     * Moves the buckets in range to new arrays of the capacity that start at the new offset, adding the buckets
+     * below the new lowest index to the new lowest bucket.
+     */
+    abstract void relayout(int capacity, int newOffset, int newMinIndex);
+
+    /**
+     * Adds the buckets below the new lowest index, which lies in the arrays, to the new lowest bucket.
+     */
+    abstract void fold(int newMinIndex);
+
+    abstract void writeBucket(SnapshotOutput out, int slot);
+
+    abstract void readBucket(SnapshotInput in, int slot);
+
+    /**
+     * Returns the array slot counting the index, the lowest bucket counting the indexes below the range.
+     */
+    int slot(int index) {
+        return Math.max(index, minIndex) - offset;
+    }
+
+    /**
+     * Empties the range, after the subclass emptied the buckets.
+     */
+    void clearRange() {
+        minIndex = Integer.MAX_VALUE;
+        maxIndex = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Widens the range to hold the index, moving the buckets to larger arrays when they do not fit and folding
+     * the lowest buckets when the range would span more than MAX_BINS.
+     */
+    void extendRange(int index) {
+        int newMinIndex;
+        int newMaxIndex;
+        if (isEmpty()) {
+            newMinIndex = index;
+            newMaxIndex = index;
+        } else {
+            newMinIndex = Math.min(index, minIndex);
+            newMaxIndex = Math.max(index, maxIndex);
+            if (newMaxIndex - newMinIndex >= MAX_BINS) {
+                newMinIndex = newMaxIndex - MAX_BINS + 1;
+            }
+        }
+        if (newMinIndex < offset || newMaxIndex >= offset + capacity()) {
+            int span = newMaxIndex - newMinIndex + 1;
+            int capacity = Math.min(MAX_BINS, Math.max(span << 1, Math.max(capacity(), INITIAL_CAPACITY)));
+            int newOffset = newMinIndex - (capacity - span) / 2;
+            relayout(capacity, newOffset, newMinIndex);
+            offset = newOffset;
+        } else if (!isEmpty() && newMinIndex > minIndex) {
+            fold(newMinIndex);
+        }
+        minIndex = newMinIndex;
+        maxIndex = newMaxIndex;
+    }
+
+    /**
+     * Writes the number of buckets in range, then the lowest index and each bucket.
+     */
+    void writeTo(SnapshotOutput out) {
+        if (isEmpty()) {
+            out.writeVarLong(0);
+            return;
+        }
+        out.writeVarLong(maxIndex - minIndex + 1);
+        out.writeSignedVarLong(minIndex);
+        for (int index = minIndex; index <= maxIndex; index++) {
+            writeBucket(out, index - offset);
+        }
+    }
+
+    /**
+     * Reads the buckets written by {@link #writeTo} into empty bins, laid out in new arrays.
+     */
+    void readFrom(SnapshotInput in) {
+        int span = (int) in.readVarLong();
+        if (span == 0) {
+            return;
+        }
+        int lowest = (int) in.readSignedVarLong();
+        int capacity = Math.min(MAX_BINS, Math.max(span, INITIAL_CAPACITY));
+        int newOffset = lowest - (capacity - span) / 2;
+        relayout(capacity, newOffset, lowest);
+        offset = newOffset;
+        minIndex = lowest;
+        maxIndex = lowest + span - 1;
+        for (int index = minIndex; index <= maxIndex; index++) {
+            readBucket(in, index - offset);
+        }
+    }
+}
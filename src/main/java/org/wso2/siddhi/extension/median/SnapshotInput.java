@@ -0,0 +1,62 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+/**
+ * Reads what {@link SnapshotOutput} wrote.
+ */
+final class SnapshotInput {
+
+    private final byte[] bytes;
+    private int position;
+
+    SnapshotInput(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    int readByte() {
+        return bytes[position++];
+    }
+
+    long readVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    double readDouble() {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits |= (bytes[position++] & 0xFFL) << (i << 3);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    boolean hasRemaining() {
+        return position < bytes.length;
+    }
+}
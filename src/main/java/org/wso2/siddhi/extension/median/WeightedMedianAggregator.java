@@ -0,0 +1,167 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.annotation.Example;
+import org.wso2.siddhi.annotation.Extension;
+import org.wso2.siddhi.annotation.Parameter;
+import org.wso2.siddhi.annotation.ReturnAttribute;
+import org.wso2.siddhi.annotation.util.DataType;
+import org.wso2.siddhi.core.config.ExecutionPlanContext;
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+import org.wso2.siddhi.core.executor.ExpressionExecutor;
+import org.wso2.siddhi.core.query.selector.attribute.aggregator.AttributeAggregator;
+import org.wso2.siddhi.core.util.config.ConfigReader;
+import org.wso2.siddhi.query.api.definition.Attribute;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Extension(
+        name = "weightedMedian",
+        namespace = "stat",
+        description = "Returns the weighted median of aggregated events: the smallest value at which the weights " +
+                "of the values up to it reach half the total weight, or the mean of it and the next value when " +
+                "they reach exactly half. With equal weights this is the median. Each value counts once with its " +
+                "weight, so a weight of 1000 costs no more than a weight of 1. An event whose weight is negative, " +
+                "NaN or infinite is logged and left out, and does not change the weighted median.",
+        parameters = {
+                @Parameter(name = "arg",
+                        description = "The value that needs to be aggregated for the weighted median.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT}),
+                @Parameter(name = "weight",
+                        description = "The weight of the value. Events whose value or weight is null are left " +
+                                "out, as are events whose weight is negative, NaN or infinite, which are logged.",
+                        type = {DataType.INT, DataType.LONG, DataType.DOUBLE, DataType.FLOAT})
+        },
+        returnAttributes = @ReturnAttribute(
+                description = "Returns the weighted median as a double, or 0.0 while the window has no weight.",
+                type = {DataType.DOUBLE}),
+        examples = {
+                @Example(
+                        syntax = "from tradeStream#window.time(5 min)" +
+                                "\nselect symbol, stat:weightedMedian(price, quantity) as medianPrice" +
+                                "\ngroup by symbol" +
+                                "\ninsert into outputStream;",
+                        description = "This will return the volume weighted median price of each symbol over " +
+                                "the last 5 minutes, for each trade and expiry."
+                )
+        }
+)
+public class WeightedMedianAggregator extends AttributeAggregator {
+
+    private static final Logger log = Logger.getLogger(WeightedMedianAggregator.class);
+
+    private KeyCodec codec;
+    private WeightedTree tree;
+    private Object result = 0.0;
+
+    protected void init(ExpressionExecutor[] expressionExecutors, ConfigReader configReader,
+                        ExecutionPlanContext executionPlanContext) {
+        if (expressionExecutors.length != 2) {
+            throw new OperationNotSupportedException("Weighted median aggregator has to have 2 parameters, the " +
+                    "value and its weight, currently " + expressionExecutors.length + " parameters provided");
+        }
+        this.codec = KeyCodec.of(expressionExecutors[0].getReturnType());
+        Attribute.Type weightType = expressionExecutors[1].getReturnType();
+        if (weightType != Attribute.Type.INT && weightType != Attribute.Type.LONG &&
+                weightType != Attribute.Type.DOUBLE && weightType != Attribute.Type.FLOAT) {
+            throw new OperationNotSupportedException("Weighted median aggregator needs a numeric weight, but " +
+                    "found " + weightType);
+        }
+        this.tree = new WeightedTree(codec);
+    }
+
+    public Attribute.Type getReturnType() {
+        return Attribute.Type.DOUBLE;
+    }
+
+    /**
+     * Adds a value of weight 1, which is only called when the weight is missing.
+     */
+    public Object processAdd(Object data) {
+        return processAdd(new Object[]{data, 1});
+    }
+
+    public Object processAdd(Object[] data) {
+        if (data[0] == null || data[1] == null) {
+            return result;
+        }
+        double weight = ((Number) data[1]).doubleValue();
+        if (!isValid(weight)) {
+            log.warn("Weighted median aggregator leaves out the value " + data[0] + ", whose weight " + weight +
+                    " is negative or not finite");
+            return result;
+        }
+        tree.add(codec.encode(data[0]), weight);
+        return updateResult();
+    }
+
+    public Object processRemove(Object data) {
+        return processRemove(new Object[]{data, 1});
+    }
+
+    public Object processRemove(Object[] data) {
+        if (data[0] == null || data[1] == null) {
+            return result;
+        }
+        double weight = ((Number) data[1]).doubleValue();
+        // the value was left out when it was added
+        if (!isValid(weight)) {
+            return result;
+        }
+        if (tree.remove(codec.encode(data[0]), weight)) {
+            return updateResult();
+        }
+        return result;
+    }
+
+    public Object reset() {
+        tree.clear();
+        return updateResult();
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    public Map<String, Object> currentState() {
+        Map<String, Object> state = new HashMap<String, Object>();
+        state.put("Result", result);
+        state.put("Window", tree.snapshot());
+        return state;
+    }
+
+    public void restoreState(Map<String, Object> state) {
+        result = state.get("Result");
+        byte[] snapshot = (byte[]) state.get("Window");
+        if (snapshot != null) {
+            tree.restore(snapshot);
+        }
+    }
+
+    private static boolean isValid(double weight) {
+        return weight >= 0 && !Double.isInfinite(weight);
+    }
+
+    private Object updateResult() {
+        result = OrderStatisticAggregator.box(tree.weightedMedian(), result);
+        return result;
+    }
+}
@@ -0,0 +1,185 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import org.wso2.siddhi.core.exception.OperationNotSupportedException;
+
+import java.util.Arrays;
+
+/**
+ * {@link OrderStatisticTree} that also keeps the weights the keys were added with. Each node keeps the sum of the
+ * weights of its key and of its subtree, so add, remove and finding the weighted median are all O(log n).
+ * <p>
+ * A node's weight is set anew when its first key is added and cleared when its last key is removed, which also
+ * drops the rounding error the weight gathered.
+ */
+class WeightedTree extends OrderStatisticTree {
+
+    private double[] weights = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    // weight of the key being added or removed
+    private double weight;
+
+    WeightedTree(KeyCodec codec) {
+        super(codec);
+    }
+
+    void add(long key, double weight) {
+        this.weight = weight;
+        add(key);
+    }
+
+    /**
+     * Removes one occurrence of the key added with the weight, returning false when the window does not hold it.
+     */
+    boolean remove(long key, double weight) {
+        this.weight = weight;
+        return remove(key);
+    }
+
+    double totalWeight() {
+        return sums[root()];
+    }
+
+    /**
+     * Returns the smallest value whose cumulative weight reaches half the total weight, or the mean of it and the
+     * next value when it reaches exactly half, which for equal weights is the ordinary median. A window without
+     * weight has a median of 0.0.
+     */
+    double weightedMedian() {
+        double half = sums[root()] / 2;
+        if (!(half > 0)) {
+            return 0.0;
+        }
+        int lower = reaching(half, false);
+        int upper = reaching(half, true);
+        if (lower == upper) {
+            return codec.decode(key(lower));
+        }
+        return (codec.decode(key(lower)) + codec.decode(key(upper))) / 2.0;
+    }
+
+    /**
+     * Returns the first node whose cumulative weight reaches the target, or exceeds it when strict, or the last
+     * node holding keys when rounding keeps every node short of it.
+     */
+    private int reaching(double target, boolean strict) {
+        int node = root();
+        int last = NIL;
+        double before = 0;
+        while (node != NIL) {
+            int left = left(node);
+            double through = before + sums[left];
+            if (left != NIL && (strict ? through > target : through >= target)) {
+                node = left;
+                continue;
+            }
+            through += weights[node];
+            if (strict ? through > target : through >= target) {
+                return node;
+            }
+            before = through;
+            if (count(node) > 0) {
+                last = node;
+            }
+            node = right(node);
+        }
+        return last;
+    }
+
+    void counted(int node, int change) {
+        if (change > 0) {
+            weights[node] = count(node) == 1 ? weight : weights[node] + weight;
+        } else {
+            weights[node] = count(node) == 0 ? 0.0 : weights[node] - weight;
+        }
+    }
+
+    void updated(int node) {
+        sums[node] = sums[left(node)] + sums[right(node)] + weights[node];
+    }
+
+    void grown(int capacity) {
+        weights = Arrays.copyOf(weights, capacity);
+        sums = Arrays.copyOf(sums, capacity);
+    }
+
+    void moved(int[] remap) {
+        double[] moved = new double[weights.length];
+        for (int node = 1; node < remap.length; node++) {
+            if (remap[node] != NIL) {
+                moved[remap[node]] = weights[node];
+            }
+        }
+        weights = moved;
+    }
+
+    /**
+     * Writes the distinct keys in ascending order, each as the difference to the previous key, followed by its
+     * count and weight.
+     */
+    void writeTo(SnapshotOutput out) {
+        out.writeByte(WEIGHTED_RUNS);
+        out.writeVarLong(distinct());
+        writeRuns(out, root(), 0);
+    }
+
+    long estimatedBytes() {
+        return super.estimatedBytes() + 2 * arrayBytes(weights.length, 8);
+    }
+
+    int snapshotBytes() {
+        return 16 + 12 * distinct();
+    }
+
+    private long writeRuns(SnapshotOutput out, int node, long previous) {
+        if (node == NIL) {
+            return previous;
+        }
+        previous = writeRuns(out, left(node), previous);
+        if (count(node) > 0) {
+            out.writeVarLong(key(node) - previous);
+            out.writeVarLong(count(node));
+            out.writeDouble(weights[node]);
+            previous = key(node);
+        }
+        return writeRuns(out, right(node), previous);
+    }
+
+    /**
+     * Loads the runs into a balanced tree in O(n), their weights going to the nodes the runs are loaded into.
+     */
+    void readFrom(SnapshotInput in, int format) {
+        if (format != WEIGHTED_RUNS) {
+            throw new OperationNotSupportedException("Only a weighted median window can be restored into a " +
+                    "weighted median window");
+        }
+        int distinct = (int) in.readVarLong();
+        long[] runKeys = new long[distinct];
+        int[] runCounts = new int[distinct];
+        if (weights.length <= distinct) {
+            grown(Integer.highestOneBit(distinct) << 1);
+        }
+        long key = 0;
+        for (int run = 0; run < distinct; run++) {
+            key += in.readVarLong();
+            runKeys[run] = key;
+            runCounts[run] = (int) in.readVarLong();
+            weights[run + 1] = in.readDouble();
+        }
+        load(runKeys, runCounts, distinct);
+    }
+}
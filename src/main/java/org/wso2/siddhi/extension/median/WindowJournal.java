@@ -0,0 +1,216 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Incremental checkpoints of a window: a base snapshot and the adds and removes applied since it was taken, kept
+ * as segments sealed at each checkpoint. Each base has a token, and a state needs to carry the base only the first
+ * time it carries its token, and after that only the segments sealed since the state before it, since the bases
+ * and their segments are kept by token for restores within the process. Restoring replays the segments onto the
+ * base.
+ * <p>
+ * Nothing is recorded until the first checkpoint takes a base. Once the operations recorded would take more
+ * than half the size of the base, or when the window is cleared, the base is compacted: the next checkpoint takes
+ * a new one from the window, so the memory and the replay of a journal stay bounded by the size of its base. A
+ * journal keeps its current and its previous base, so a state restores as long as no two newer bases were taken
+ * since. The bases of closed journals are kept for the {@link #RETAINED} most recently closed ones, which serves
+ * restores into the next runtime of the same plan.
+ */
+final class WindowJournal {
+
+    static final int RETAINED = 64;
+
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final Map<Long, Checkpoint> OPEN = new HashMap<Long, Checkpoint>();
+    private static final Map<Long, Checkpoint> CLOSED = new LinkedHashMap<Long, Checkpoint>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Checkpoint> eldest) {
+            return size() > RETAINED;
+        }
+    };
+
+    // the base the operations are recorded against, null until the next checkpoint takes one
+    private Checkpoint current;
+    private Checkpoint previous;
+    private final SnapshotOutput pending = new SnapshotOutput(64);
+    private long previousKey;
+    private long sealed;
+
+    void added(long key) {
+        record(ADD, key);
+    }
+
+    void removed(long key) {
+        record(REMOVE, key);
+    }
+
+    void cleared() {
+        compact();
+    }
+
+    /**
+     * Seals the operations recorded since the last checkpoint and returns the base they were recorded against,
+     * taking a new one from the engine when there is none.
+     */
+    Checkpoint checkpoint(MedianEngine engine) {
+        if (current == null) {
+            start(engine.snapshot(), new ArrayList<byte[]>());
+            return current;
+        }
+        if (pending.size() > 0) {
+            synchronized (WindowJournal.class) {
+                current.segments.add(pending.toByteArray());
+            }
+            sealed += pending.size();
+            pending.reset();
+            previousKey = 0;
+        }
+        return current;
+    }
+
+    /**
+     * Restores the base with the token into the engine and replays its first segments, followed by the ones of
+     * the state, which become the journal of the engine under a new token. The state carries the base when it is
+     * the first one of its token, or else it is looked up by the token. Returns false when the base was replaced
+     * or is not held by this process.
+     */
+    boolean restore(MedianEngine engine, Long token, byte[] base, int offset, byte[][] segments) {
+        List<byte[]> replayed = new ArrayList<byte[]>();
+        if (base == null || offset > 0) {
+            Checkpoint known;
+            synchronized (WindowJournal.class) {
+                known = token == null ? null : OPEN.get(token);
+                if (known == null && token != null) {
+                    known = CLOSED.get(token);
+                }
+                if (known == null || known.segments.size() < offset) {
+                    return false;
+                }
+                replayed.addAll(known.segments.subList(0, offset));
+            }
+            base = known.base;
+        }
+        if (segments != null) {
+            for (byte[] segment : segments) {
+                replayed.add(segment);
+            }
+        }
+        engine.restore(base);
+        compact();
+        for (byte[] segment : replayed) {
+            SnapshotInput in = new SnapshotInput(segment);
+            long key = 0;
+            while (in.hasRemaining()) {
+                int operation = in.readByte();
+                key += in.readSignedVarLong();
+                if (operation == ADD) {
+                    engine.add(key);
+                } else {
+                    engine.remove(key);
+                }
+            }
+            sealed += segment.length;
+        }
+        start(base, replayed);
+        return true;
+    }
+
+    /**
+     * Keeps the bases of the journal for restores into a later runtime, among those of the other closed ones.
+     */
+    void close() {
+        synchronized (WindowJournal.class) {
+            for (Checkpoint checkpoint : new Checkpoint[]{previous, current}) {
+                if (checkpoint != null && OPEN.remove(checkpoint.token) != null) {
+                    CLOSED.put(checkpoint.token, checkpoint);
+                }
+            }
+        }
+        previous = null;
+        current = null;
+    }
+
+    private void record(int operation, long key) {
+        if (current == null) {
+            return;
+        }
+        pending.writeByte(operation);
+        pending.writeSignedVarLong(key - previousKey);
+        previousKey = key;
+        if (sealed + pending.size() > current.base.length / 2) {
+            compact();
+        }
+    }
+
+    private void start(byte[] base, List<byte[]> segments) {
+        current = new Checkpoint(ThreadLocalRandom.current().nextLong(), base, segments);
+        synchronized (WindowJournal.class) {
+            OPEN.put(current.token, current);
+        }
+    }
+
+    /**
+     * Retires the current base, which replaces the previous one, so that the next checkpoint takes a new one.
+     */
+    private void compact() {
+        if (current != null) {
+            synchronized (WindowJournal.class) {
+                if (previous != null) {
+                    OPEN.remove(previous.token);
+                }
+            }
+            previous = current;
+            current = null;
+        }
+        pending.reset();
+        previousKey = 0;
+        sealed = 0;
+    }
+
+    /**
+     * A base snapshot with its token and the segments sealed against it so far, which are only read or added to
+     * while holding the journal's class lock.
+     */
+    static final class Checkpoint {
+        final long token;
+        final byte[] base;
+        private final List<byte[]> segments;
+
+        private Checkpoint(long token, byte[] base, List<byte[]> segments) {
+            this.token = token;
+            this.base = base;
+            this.segments = segments;
+        }
+
+        /**
+         * Returns the segments sealed from the one at the offset on.
+         */
+        byte[][] segments(int offset) {
+            synchronized (WindowJournal.class) {
+                List<byte[]> since = segments.subList(offset, segments.size());
+                return since.toArray(new byte[since.size()][]);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+public class DecayedMedianAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(DecayedMedianAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("DecayedMedianAggregatorTestCase Double Windowless TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (median double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream " +
+                "select stat:decayedMedian(tt, 1 sec) as median insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        // each second doubles the weight of the values arriving, relative to the earlier ones
+        final double[] expectedMedians = {10.0, 10.0, 10.0, 30.0, 10.0, 20.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], (Double) ev.getData(0), expectedMedians[count] * 0.01);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(1000, new Object[]{10.0});
+        inputHandler.send(1000, new Object[]{10.0});
+        inputHandler.send(1000, new Object[]{30.0});
+        inputHandler.send(2000, new Object[]{30.0});
+        inputHandler.send(2000, new Object[]{10.0});
+        inputHandler.send(5000, new Object[]{20.0});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("DecayedMedianAggregatorTestCase Int Group By Windowless TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (key string, tt int); " +
+                "define stream outputStream (key string, median double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream " +
+                "select key, stat:decayedMedian(tt, 1 sec, 0.001) as median group by key " +
+                "insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedMedians = {10.0, 100.0, 20.0, 50.0, 10.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], (Double) ev.getData(1), expectedMedians[count] * 0.001);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(1000, new Object[]{"a", 10});
+        inputHandler.send(1000, new Object[]{"b", 100});
+        inputHandler.send(3000, new Object[]{"a", 20});
+        inputHandler.send(3000, new Object[]{"b", 50});
+        inputHandler.send(3000, new Object[]{"a", 10});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+public class MedianAbsoluteDeviationAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(MedianAbsoluteDeviationAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("MedianAbsoluteDeviationAggregatorTestCase Int Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream outputStream (median double, mad double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(5) " +
+                "select stat:median(tt) as median, stat:mad(tt) as mad insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedMedians = {1.0, 1.5, 2.0, 2.5, 3.0, 4.0};
+        final double[] expectedDeviations = {0.0, 0.5, 1.0, 1.0, 1.0, 2.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], ev.getData(0));
+                    Assert.assertEquals(expectedDeviations[count], (Double) ev.getData(1), 1e-9);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1});
+        inputHandler.send(new Object[]{2});
+        inputHandler.send(new Object[]{3});
+        inputHandler.send(new Object[]{4});
+        inputHandler.send(new Object[]{100});
+        inputHandler.send(new Object[]{6});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("MedianAbsoluteDeviationAggregatorTestCase Interquartile Range Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (iqr double, median double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(5) " +
+                "select stat:iqr(tt) as iqr, stat:median(tt) as median insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedRanges = {0.0, 0.5, 1.0, 1.5, 2.0, 3.0};
+        final double[] expectedMedians = {1.0, 1.5, 2.0, 2.5, 3.0, 4.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedRanges[count], (Double) ev.getData(0), 1e-9);
+                    Assert.assertEquals(expectedMedians[count], ev.getData(1));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{2.0});
+        inputHandler.send(new Object[]{3.0});
+        inputHandler.send(new Object[]{4.0});
+        inputHandler.send(new Object[]{100.0});
+        inputHandler.send(new Object[]{6.0});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+}
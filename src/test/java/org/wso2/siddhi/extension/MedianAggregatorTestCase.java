@@ -22,6 +22,18 @@ import org.wso2.siddhi.core.SiddhiManager;
 import org.wso2.siddhi.core.event.Event;
 import org.wso2.siddhi.core.stream.input.InputHandler;
 import org.wso2.siddhi.core.stream.output.StreamCallback;
+import org.wso2.siddhi.core.util.config.InMemoryConfigManager;
+import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 public class MedianAggregatorTestCase {
 
@@ -282,4 +294,872 @@ public class MedianAggregatorTestCase {
 
         executionPlanRuntime.shutdown();
     }
+
+
+    @org.junit.Test
+    public void Test5() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Long Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt long); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 1:
+                            Assert.assertEquals(5.0, ev.getData(0));
+                            break;
+                        case 2:
+                            Assert.assertEquals(3.0, ev.getData(0));
+                            break;
+                        case 3:
+                            Assert.assertEquals(4.0, ev.getData(0));
+                            break;
+                        case 4:
+                            Assert.assertEquals(2.0, ev.getData(0));
+                            break;
+                        case 5:
+                            Assert.assertEquals(3.0, ev.getData(0));
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{5L});
+        inputHandler.send(new Object[]{1L});
+        inputHandler.send(new Object[]{4L});
+        inputHandler.send(new Object[]{2L});
+        inputHandler.send(new Object[]{3L});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test6() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Float Batch Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt float); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.lengthBatch(4) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 1:
+                            Assert.assertEquals(2.0, ev.getData(0));
+                            break;
+                        case 2:
+                            Assert.assertEquals(5.5, ev.getData(0));
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.5f});
+        inputHandler.send(new Object[]{3.5f});
+        inputHandler.send(new Object[]{2.5f});
+        inputHandler.send(new Object[]{0.5f});
+        inputHandler.send(new Object[]{4.0f});
+        inputHandler.send(new Object[]{6.0f});
+        inputHandler.send(new Object[]{5.0f});
+        inputHandler.send(new Object[]{7.0f});
+
+        Assert.assertEquals(2, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test7() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Double Batch Engine Length Batch Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.lengthBatch(5) " +
+                "select stat:median(tt, 'batch') as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 1:
+                            Assert.assertEquals(8.68211, ev.getData()[0]);
+                            break;
+                        case 2:
+                            Assert.assertEquals(9.17144, ev.getData(0));
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{8.94775});
+        inputHandler.send(new Object[]{8.68211});
+        inputHandler.send(new Object[]{8.44443});
+        inputHandler.send(new Object[]{8.23472});
+        inputHandler.send(new Object[]{10.9959});
+        inputHandler.send(new Object[]{10.3738});
+        inputHandler.send(new Object[]{9.76563});
+        inputHandler.send(new Object[]{9.17144});
+        inputHandler.send(new Object[]{8.19278});
+        inputHandler.send(new Object[]{7.49374});
+
+        Assert.assertEquals(2, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test8() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Int Approximate Engine Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(5) " +
+                "select stat:median(tt, 'approx', 0.01) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expected = {100.0, 150.0, 200.0, 250.0, 300.0, 400.0, 500.0, 600.0, 800.0, 800.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    double median = (Double) ev.getData(0);
+                    Assert.assertEquals(expected[count], median, expected[count] * 0.01);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{100});
+        inputHandler.send(new Object[]{200});
+        inputHandler.send(new Object[]{300});
+        inputHandler.send(new Object[]{400});
+        inputHandler.send(new Object[]{500});
+        inputHandler.send(new Object[]{600});
+        inputHandler.send(new Object[]{800});
+        inputHandler.send(new Object[]{900});
+        inputHandler.send(new Object[]{1000});
+        inputHandler.send(new Object[]{700});
+
+        Assert.assertEquals(10, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test9() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Restore Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+
+        String executionPlan = "@plan:name('medianPersistence') " +
+                "define stream inputStream (tt double); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(4) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        final double[] expected = {1.0, 1.5, 2.0, 2.5, 3.5, 4.5};
+        StreamCallback callback = new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        };
+
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{2.0});
+        inputHandler.send(new Object[]{3.0});
+        inputHandler.send(new Object[]{100.0});
+        executionPlanRuntime.persist();
+        Thread.sleep(500);
+        executionPlanRuntime.shutdown();
+
+        executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        executionPlanRuntime.restoreLastRevision();
+        inputHandler.send(new Object[]{4.0});
+        inputHandler.send(new Object[]{5.0});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test10() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Restore Incremental Checkpoint TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+
+        String executionPlan = "@plan:name('medianIncrementalPersistence') " +
+                "define stream inputStream (tt double); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        final double[] expected = {1.0, 1.5, 2.0, 3.0, 10.0, 20.0};
+        StreamCallback callback = new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        };
+
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{2.0});
+        inputHandler.send(new Object[]{3.0});
+        executionPlanRuntime.persist();
+        Thread.sleep(500);
+        inputHandler.send(new Object[]{10.0});
+        executionPlanRuntime.persist();
+        Thread.sleep(500);
+        executionPlanRuntime.shutdown();
+
+        executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        executionPlanRuntime.restoreLastRevision();
+        inputHandler.send(new Object[]{20.0});
+        inputHandler.send(new Object[]{30.0});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test11() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Int Sliding Length Window Past Small Window Size TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(70) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    Assert.assertEquals((Math.max(1, count - 69) + count) / 2.0, ev.getData(0));
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        for (int i = 1; i <= 100; i++) {
+            inputHandler.send(new Object[]{i});
+        }
+
+        Assert.assertEquals(100, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test12() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Lazy Expired Events TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:median(tt, 'exact', 'lazy') as tt insert expired events into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expected = {2.5, 3.5, 4.5};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{2.0});
+        inputHandler.send(new Object[]{3.0});
+        inputHandler.send(new Object[]{4.0});
+        inputHandler.send(new Object[]{5.0});
+        inputHandler.send(new Object[]{6.0});
+
+        Assert.assertEquals(3, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test13() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Int Counting Engine TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(4) " +
+                "select stat:median(tt, 'counting', 0, 10) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expected = {1.0, 1.5, 2.0, 2.5, 3.5, 4.5};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1});
+        inputHandler.send(new Object[]{2});
+        inputHandler.send(new Object[]{3});
+        inputHandler.send(new Object[]{50});
+        inputHandler.send(new Object[]{4});
+        inputHandler.send(new Object[]{5});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test14() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Double Repeated Readings TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(100) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 1:
+                            Assert.assertEquals(20.5, ev.getData()[0]);
+                            break;
+                        case 4:
+                            Assert.assertEquals(20.75, ev.getData()[0]);
+                            break;
+                        case 300:
+                            Assert.assertEquals(21.0, ev.getData()[0]);
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        double[] readings = {20.5, 21.0, 21.5};
+        for (int i = 0; i < 300; i++) {
+            inputHandler.send(new Object[]{readings[i % 3]});
+        }
+
+        Assert.assertEquals(300, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test15() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Double Large Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (tt double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(500) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 10:
+                            Assert.assertEquals(2.25, ev.getData()[0]);
+                            break;
+                        case 600:
+                            Assert.assertEquals(174.75, ev.getData()[0]);
+                            break;
+                        case 2000:
+                            Assert.assertEquals(874.75, ev.getData()[0]);
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        for (int i = 0; i < 2000; i++) {
+            inputHandler.send(new Object[]{i * 0.5});
+        }
+
+        Assert.assertEquals(2000, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test16() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Int Global Median Across Partitions TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (region string, tt int); " +
+                "define stream outputStream (region string, tt double);";
+
+        String query = "partition with (region of inputStream) begin " +
+                "@info(name = 'query1') " + "from inputStream#window.length(2) " +
+                "select region, stat:median(tt, 'exact', 'eager', 'global') as tt insert into filteredOutputStream; " +
+                "end;";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedMedians = {1.0, 5.5, 2.0, 6.0, 6.5};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], ev.getData()[1]);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{"A", 1});
+        inputHandler.send(new Object[]{"B", 10});
+        inputHandler.send(new Object[]{"A", 2});
+        inputHandler.send(new Object[]{"B", 20});
+        inputHandler.send(new Object[]{"A", 3});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test17() throws Exception {
+
+        log.info("MedianAggregatorTestCase Metrics Through JMX TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "@plan:name('medianMetrics') " +
+                "define stream inputStream (tt double); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("org.wso2.siddhi.extension.median:type=Median,plan=\"medianMetrics\",*");
+        Set<ObjectName> names = server.queryNames(pattern, null);
+        Assert.assertEquals(1, names.size());
+        ObjectName name = names.iterator().next();
+        Assert.assertEquals(false, server.getAttribute(name, "Enabled"));
+        server.setAttribute(name, new Attribute("Enabled", true));
+
+        for (int i = 1; i <= 5; i++) {
+            inputHandler.send(new Object[]{(double) i});
+        }
+
+        Assert.assertEquals("auto", server.getAttribute(name, "Engine"));
+        Assert.assertEquals(5L, server.getAttribute(name, "AddCount"));
+        Assert.assertEquals(2L, server.getAttribute(name, "RemoveCount"));
+        Assert.assertEquals(3L, server.getAttribute(name, "WindowValues"));
+        executionPlanRuntime.shutdown();
+        Assert.assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+
+    @org.junit.Test
+    public void Test18() throws Exception {
+
+        log.info("MedianAggregatorTestCase Memory Budget TestCase");
+        Map<String, String> configs = new HashMap<String, String>();
+        configs.put("stat.median.memoryBudget", "4kb");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configs, null));
+
+
+        String executionPlan = "@plan:name('medianBudget') " +
+                "define stream inputStream (tt int); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(1000) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 10:
+                            Assert.assertEquals(5.5, ev.getData()[0]);
+                            break;
+                        case 3000:
+                            Assert.assertEquals(2500.5, (Double) ev.getData()[0], 25.0);
+                            break;
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        for (int i = 1; i <= 3000; i++) {
+            inputHandler.send(new Object[]{i});
+        }
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = server.queryNames(new ObjectName("org.wso2.siddhi.extension.median:type=Median," +
+                "plan=\"medianBudget\",*"), null).iterator().next();
+        Assert.assertEquals(1L, server.getAttribute(name, "Degradations"));
+        Assert.assertEquals(3000, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test19() throws Exception {
+
+        log.info("MedianAggregatorTestCase Adaptive Engine TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "@plan:name('medianAdaptive') " +
+                "define stream inputStream (tt int); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(100) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 10:
+                            Assert.assertEquals(5.5, ev.getData()[0]);
+                            break;
+                        case 3000:
+                            Assert.assertEquals(24.5, ev.getData()[0]);
+                            break;
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = server.queryNames(new ObjectName("org.wso2.siddhi.extension.median:type=Median," +
+                "plan=\"medianAdaptive\",*"), null).iterator().next();
+        server.setAttribute(name, new Attribute("Enabled", true));
+        for (int i = 1; i <= 3000; i++) {
+            inputHandler.send(new Object[]{i % 50});
+        }
+        Assert.assertEquals("auto", server.getAttribute(name, "Engine"));
+        Assert.assertEquals("CountingEngine", server.getAttribute(name, "ActiveEngine"));
+        Assert.assertEquals(3000, count);
+        executionPlanRuntime.shutdown();
+
+        Map<String, String> configs = new HashMap<String, String>();
+        configs.put("stat.median.engine", "exact");
+        siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configs, null));
+        executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan.replace("medianAdaptive",
+                "medianConfigured"));
+        executionPlanRuntime.start();
+        name = server.queryNames(new ObjectName("org.wso2.siddhi.extension.median:type=Median," +
+                "plan=\"medianConfigured\",*"), null).iterator().next();
+        Assert.assertEquals("exact", server.getAttribute(name, "Engine"));
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test20() throws Exception {
+
+        log.info("MedianAggregatorTestCase Restore Off-Heap Window TestCase");
+        File directory = Files.createTempDirectory("median").toFile();
+        try {
+            Map<String, String> configs = new HashMap<String, String>();
+            configs.put("stat.median.offHeapDirectory", directory.getPath());
+            SiddhiManager siddhiManager = new SiddhiManager();
+            siddhiManager.setConfigManager(new InMemoryConfigManager(configs, null));
+            siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+            String executionPlan = "@plan:name('medianOffHeap') " +
+                    "define stream inputStream (tt double); " +
+                    "@info(name = 'query1') " + "from inputStream#window.length(4) " +
+                    "select stat:median(tt, 'offheap') as tt insert into filteredOutputStream";
+            final double[] expected = {1.0, 1.5, 2.0, 2.5, 3.5, 4.5};
+            StreamCallback callback = new StreamCallback() {
+                @Override
+                public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                    for (Event ev : events) {
+                        Assert.assertEquals(expected[count], ev.getData(0));
+                        count++;
+                    }
+                }
+            };
+
+            ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+            executionPlanRuntime.addCallback("filteredOutputStream", callback);
+            InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+            executionPlanRuntime.start();
+            inputHandler.send(new Object[]{1.0});
+            inputHandler.send(new Object[]{2.0});
+            inputHandler.send(new Object[]{3.0});
+            inputHandler.send(new Object[]{100.0});
+            executionPlanRuntime.persist();
+            Thread.sleep(500);
+            executionPlanRuntime.shutdown();
+
+            executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+            executionPlanRuntime.addCallback("filteredOutputStream", callback);
+            inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+            executionPlanRuntime.start();
+            executionPlanRuntime.restoreLastRevision();
+            inputHandler.send(new Object[]{4.0});
+            inputHandler.send(new Object[]{5.0});
+
+            Assert.assertEquals(6, count);
+            Assert.assertTrue(new File(directory, "medianOffHeap").list().length > 0);
+            executionPlanRuntime.shutdown();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @org.junit.Test
+    public void Test21() throws Exception {
+
+        log.info("MedianAggregatorTestCase Metrics Of Group By TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "@plan:name('medianGroupMetrics') " +
+                "define stream inputStream (region string, tt double); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select region, stat:median(tt) as tt group by region insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                count += events.length;
+            }
+        });
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{"east", 1.0});
+        inputHandler.send(new Object[]{"west", 2.0});
+        inputHandler.send(new Object[]{"north", 3.0});
+        inputHandler.send(new Object[]{"east", 4.0});
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pattern = new ObjectName("org.wso2.siddhi.extension.median:type=Median," +
+                "plan=\"medianGroupMetrics\",*");
+        Assert.assertEquals(4, count);
+        Assert.assertEquals(1, server.queryNames(pattern, null).size());
+        executionPlanRuntime.shutdown();
+        Assert.assertTrue(server.queryNames(pattern, null).isEmpty());
+    }
+
+    @org.junit.Test
+    public void Test22() throws InterruptedException {
+
+        log.info("MedianAggregatorTestCase Null Values TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "define stream inputStream (tt double); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        final double[] expected = {1.0, 1.0, 2.0, 4.0, 5.0};
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        });
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{null});
+        inputHandler.send(new Object[]{3.0});
+        inputHandler.send(new Object[]{5.0});
+        inputHandler.send(new Object[]{7.0});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test23() throws Exception {
+
+        log.info("MedianAggregatorTestCase Restore Degraded Window TestCase");
+        Map<String, String> configs = new HashMap<String, String>();
+        configs.put("stat.median.memoryBudget", "4kb");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setConfigManager(new InMemoryConfigManager(configs, null));
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+
+        String executionPlan = "@plan:name('medianBudgetRestore') " +
+                "define stream inputStream (tt int); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(1000) " +
+                "select stat:median(tt) as tt insert into filteredOutputStream";
+        StreamCallback callback = new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    if (count == 3001) {
+                        Assert.assertEquals(2501.5, (Double) ev.getData()[0], 25.0);
+                    }
+                }
+            }
+        };
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        for (int i = 1; i <= 3000; i++) {
+            inputHandler.send(new Object[]{i});
+        }
+        executionPlanRuntime.persist();
+        Thread.sleep(500);
+        executionPlanRuntime.shutdown();
+
+        executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("filteredOutputStream", callback);
+        inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        executionPlanRuntime.restoreLastRevision();
+        inputHandler.send(new Object[]{3001});
+
+        Assert.assertEquals(3001, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
 }
@@ -0,0 +1,237 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of execution plans using stat:median, run by hand rather than by surefire:
+ * <pre>
+ * mvn -B -Pload-test test-compile exec:java -Dexec.args="rate=50000 duration=30"
+ * </pre>
+ * Each scenario is pushed through an InputHandler at the given rate, 0 meaning as fast as possible, first for the
+ * warm up and then for the measured duration. Events carry their send time, so the latency of an output is the
+ * time from sending the event that caused it to receiving it in the callback. Results are written as JSON.
+ * <p>
+ * Arguments, all optional: rate (events/s, 0), duration (s, 30), warmup (s, 10), window (events, 1000), groups
+ * (100), engine (auto), scenarios (length,lengthBatch,time,groupBy,partition) and report
+ * (target/median-load-report.json).
+ */
+public class MedianQueryLoadHarness {
+
+    private static final Logger log = Logger.getLogger(MedianQueryLoadHarness.class);
+
+    private final long rate;
+    private final int duration;
+    private final int warmup;
+    private final int window;
+    private final int groups;
+    private final String engine;
+
+    private long[] latencies = new long[1 << 20];
+    private int latencyCount;
+    private volatile boolean recording;
+
+    MedianQueryLoadHarness(Map<String, String> arguments) {
+        this.rate = Long.parseLong(argument(arguments, "rate", "0"));
+        this.duration = Integer.parseInt(argument(arguments, "duration", "30"));
+        this.warmup = Integer.parseInt(argument(arguments, "warmup", "10"));
+        this.window = Integer.parseInt(argument(arguments, "window", "1000"));
+        this.groups = Integer.parseInt(argument(arguments, "groups", "100"));
+        this.engine = argument(arguments, "engine", "auto");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> arguments = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Arguments have to be given as name=value, but found " + arg);
+            }
+            arguments.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        MedianQueryLoadHarness harness = new MedianQueryLoadHarness(arguments);
+        List<String> results = new ArrayList<String>();
+        for (String scenario : argument(arguments, "scenarios", "length,lengthBatch,time,groupBy,partition")
+                .split(",")) {
+            results.add(harness.run(scenario.trim()));
+        }
+        harness.report(new File(argument(arguments, "report", "target/median-load-report.json")), results);
+    }
+
+    String executionPlan(String scenario) {
+        String median = "stat:median(v, '" + engine + "')";
+        String streams = "define stream inputStream (key string, v double, sent long); ";
+        if ("length".equals(scenario)) {
+            return streams + "@info(name = 'query1') from inputStream#window.length(" + window + ") " +
+                    "select sent, " + median + " as m insert into outputStream;";
+        } else if ("lengthBatch".equals(scenario)) {
+            return streams + "@info(name = 'query1') from inputStream#window.lengthBatch(" + window + ") " +
+                    "select sent, " + median + " as m insert into outputStream;";
+        } else if ("time".equals(scenario)) {
+            return streams + "@info(name = 'query1') from inputStream#window.time(1 sec) " +
+                    "select sent, " + median + " as m insert into outputStream;";
+        } else if ("groupBy".equals(scenario)) {
+            return streams + "@info(name = 'query1') from inputStream#window.length(" + window + ") " +
+                    "select key, sent, " + median + " as m group by key insert into outputStream;";
+        } else if ("partition".equals(scenario)) {
+            return streams + "partition with (key of inputStream) begin " +
+                    "@info(name = 'query1') from inputStream#window.length(" + window + ") " +
+                    "select key, sent, " + median + " as m insert into outputStream; end;";
+        }
+        throw new IllegalArgumentException("Unknown scenario " + scenario);
+    }
+
+    String run(String scenario) throws InterruptedException {
+        String executionPlan = executionPlan(scenario);
+        log.info("Running " + scenario + ": " + executionPlan);
+        SiddhiManager siddhiManager = new SiddhiManager();
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        final int sentIndex = "groupBy".equals(scenario) || "partition".equals(scenario) ? 1 : 0;
+        executionPlanRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(Event[] events) {
+                long now = System.nanoTime();
+                if (recording) {
+                    for (Event event : events) {
+                        record(now - (Long) event.getData(sentIndex));
+                    }
+                }
+            }
+        });
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+
+        String[] keys = new String[groups];
+        for (int i = 0; i < groups; i++) {
+            keys[i] = "key" + i;
+        }
+        Random random = new Random(42);
+        recording = false;
+        send(inputHandler, keys, random, warmup);
+        latencyCount = 0;
+        recording = true;
+        long start = System.nanoTime();
+        long sent = send(inputHandler, keys, random, duration);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        recording = false;
+        executionPlanRuntime.shutdown();
+
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        StringBuilder result = new StringBuilder();
+        result.append("    {\"scenario\": \"").append(scenario)
+                .append("\", \"engine\": \"").append(engine)
+                .append("\", \"window\": ").append(window)
+                .append(", \"groups\": ").append(groups)
+                .append(", \"targetRate\": ").append(rate)
+                .append(", \"events\": ").append(sent)
+                .append(", \"seconds\": ").append(elapsed)
+                .append(", \"eventsPerSecond\": ").append(Math.round(sent / elapsed))
+                .append(", \"outputs\": ").append(latencyCount)
+                .append(", \"latencyMicros\": {\"p50\": ").append(percentile(sorted, 0.5))
+                .append(", \"p90\": ").append(percentile(sorted, 0.9))
+                .append(", \"p99\": ").append(percentile(sorted, 0.99))
+                .append(", \"p999\": ").append(percentile(sorted, 0.999))
+                .append(", \"max\": ").append(percentile(sorted, 1.0))
+                .append("}}");
+        log.info(result.toString().trim());
+        return result.toString();
+    }
+
+    /**
+     * Sends events for the given number of seconds, pacing them to the rate when one is set.
+     */
+    private long send(InputHandler inputHandler, String[] keys, Random random, int seconds)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long interval = rate > 0 ? 1000000000L / rate : 0;
+        long sent = 0;
+        for (long now = start; now < end; now = System.nanoTime()) {
+            if (interval > 0) {
+                long due = start + sent * interval;
+                if (due > now) {
+                    LockSupport.parkNanos(due - now);
+                }
+            }
+            inputHandler.send(new Object[]{keys[(int) (sent % keys.length)], random.nextGaussian() * 100,
+                    System.nanoTime()});
+            sent++;
+        }
+        return sent;
+    }
+
+    private synchronized void record(long latency) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencyCount << 1);
+        }
+        latencies[latencyCount++] = latency;
+    }
+
+    private void report(File file, List<String> results) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        StringBuilder report = new StringBuilder();
+        report.append("{\n  \"timestamp\": ").append(System.currentTimeMillis())
+                .append(",\n  \"java\": \"").append(System.getProperty("java.version"))
+                .append("\",\n  \"processors\": ").append(Runtime.getRuntime().availableProcessors())
+                .append(",\n  \"results\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            report.append(results.get(i)).append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        report.append("  ]\n}\n");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(report.toString());
+        } finally {
+            writer.close();
+        }
+        log.info("Wrote " + file.getAbsolutePath());
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(q * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1000.0;
+    }
+
+    private static String argument(Map<String, String> arguments, String name, String defaultValue) {
+        String value = arguments.get(name);
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.Arrays;
+
+public class MediansAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(MediansAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("MediansAggregatorTestCase Mixed Types Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (cpu int, mem double, latency long); " +
+                "define stream outputStream (medians object);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:medians(cpu, mem, latency) as medians insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[][] expected = {
+                {10.0, 1.0, 100.0},
+                {15.0, 2.0, 200.0},
+                {20.0, 2.0, 200.0},
+                {30.0, 3.0, 200.0}
+        };
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    double[] medians = (double[]) ev.getData(0);
+                    Assert.assertTrue(Arrays.toString(medians), Arrays.equals(expected[count], medians));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{10, 1.0, 100L});
+        inputHandler.send(new Object[]{20, 3.0, 300L});
+        inputHandler.send(new Object[]{30, 2.0, 200L});
+        inputHandler.send(new Object[]{40, 5.0, 50L});
+
+        Assert.assertEquals(4, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("MediansAggregatorTestCase Null Values Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (cpu int, mem double); " +
+                "define stream outputStream (medians object);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(2) " +
+                "select stat:medians(cpu, mem) as medians insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        // the event with a null memory reading is left out, also when it expires
+        final double[][] expected = {
+                {1.0, 1.0},
+                {1.0, 1.0},
+                {3.0, 3.0},
+                {5.0, 5.0}
+        };
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    double[] medians = (double[]) ev.getData(0);
+                    Assert.assertTrue(Arrays.toString(medians), Arrays.equals(expected[count], medians));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1, 1.0});
+        inputHandler.send(new Object[]{2, null});
+        inputHandler.send(new Object[]{3, 3.0});
+        inputHandler.send(new Object[]{7, 7.0});
+
+        Assert.assertEquals(4, count);
+        executionPlanRuntime.shutdown();
+    }
+}
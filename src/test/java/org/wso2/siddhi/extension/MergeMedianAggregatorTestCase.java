@@ -0,0 +1,141 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+public class MergeMedianAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(MergeMedianAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("MergeMedianAggregatorTestCase Int Sketches Of Length Batches TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream sketchStream (sketch object); " +
+                "define stream outputStream (median double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.lengthBatch(10) " +
+                "select stat:medianSketch(tt, 'lazy') as sketch insert into sketchStream; " +
+                "@info(name = 'query2') " + "from sketchStream#window.length(3) " +
+                "select stat:mergeMedian(sketch) as median insert into outputStream;";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedMedians = {5.5, 10.5, 15.5, 25.5, 35.5};
+        executionPlanRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], (Double) ev.getData(0),
+                            expectedMedians[count] * 0.01);
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        for (int i = 1; i <= 50; i++) {
+            inputHandler.send(new Object[]{i});
+        }
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("MergeMedianAggregatorTestCase Double Base64 Sketches Of Several Nodes TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String centralStreamDefinition = "define stream sketchStream (sketch string); " +
+                "define stream outputStream (median double);";
+        String centralQuery = "@info(name = 'query1') " + "from sketchStream#window.length(2) " +
+                "select stat:mergeMedian(sketch, 0.01) as median insert into outputStream;";
+        ExecutionPlanRuntime centralRuntime = siddhiManager.
+                createExecutionPlanRuntime(centralStreamDefinition + centralQuery);
+
+        final double[] expectedMedians = {25.5, 50.5};
+        centralRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedMedians[count], (Double) ev.getData(0),
+                            expectedMedians[count] * 0.015);
+                    count++;
+                }
+            }
+        });
+        final InputHandler centralInputHandler = centralRuntime.getInputHandler("sketchStream");
+        centralRuntime.start();
+
+        double[] accuracies = {0.01, 0.005};
+        ExecutionPlanRuntime[] nodeRuntimes = new ExecutionPlanRuntime[accuracies.length];
+        for (int node = 0; node < accuracies.length; node++) {
+            String nodeStreamDefinition = "define stream inputStream (tt double); " +
+                    "define stream sketchStream (sketch string);";
+            String nodeQuery = "@info(name = 'query1') " + "from inputStream#window.lengthBatch(50) " +
+                    "select stat:medianSketch(tt, " + accuracies[node] + ", 'lazy', 'base64') as sketch " +
+                    "insert into sketchStream;";
+            nodeRuntimes[node] = siddhiManager.createExecutionPlanRuntime(nodeStreamDefinition + nodeQuery);
+            nodeRuntimes[node].addCallback("sketchStream", new StreamCallback() {
+                @Override
+                public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                    for (Event ev : events) {
+                        Assert.assertTrue(ev.getData(0) instanceof String);
+                        try {
+                            centralInputHandler.send(new Object[]{ev.getData(0)});
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            });
+            nodeRuntimes[node].start();
+        }
+
+        for (int node = 0; node < nodeRuntimes.length; node++) {
+            InputHandler inputHandler = nodeRuntimes[node].getInputHandler("inputStream");
+            for (int i = 1; i <= 50; i++) {
+                inputHandler.send(new Object[]{node * 50.0 + i});
+            }
+        }
+
+        Assert.assertEquals(2, count);
+        for (ExecutionPlanRuntime nodeRuntime : nodeRuntimes) {
+            nodeRuntime.shutdown();
+        }
+        centralRuntime.shutdown();
+    }
+}
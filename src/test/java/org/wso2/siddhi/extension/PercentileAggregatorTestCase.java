@@ -0,0 +1,128 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+public class PercentileAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(PercentileAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("PercentileAggregatorTestCase Int Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt int); " +
+                "define stream outputStream (p75 double, median double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(5) " +
+                "select stat:percentile(tt, 75) as p75, stat:median(tt) as median insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[] expectedPercentiles = {1.0, 1.75, 2.5, 3.25, 4.0, 5.0};
+        final double[] expectedMedians = {1.0, 1.5, 2.0, 2.5, 3.0, 4.0};
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expectedPercentiles[count], (Double) ev.getData(0), 1e-9);
+                    Assert.assertEquals(expectedMedians[count], ev.getData(1));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1});
+        inputHandler.send(new Object[]{2});
+        inputHandler.send(new Object[]{3});
+        inputHandler.send(new Object[]{4});
+        inputHandler.send(new Object[]{5});
+        inputHandler.send(new Object[]{6});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("PercentileAggregatorTestCase Double Group By Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (key string, tt double); " +
+                "define stream outputStream (key string, p0 double, p100 double);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select key, stat:percentile(tt, 0) as p0, stat:percentile(tt, 100) as p100 " +
+                "group by key insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    count++;
+                    switch (count) {
+                        case 1:
+                            Assert.assertEquals(5.0, ev.getData(1));
+                            Assert.assertEquals(5.0, ev.getData(2));
+                            break;
+                        case 2:
+                            Assert.assertEquals(1.0, ev.getData(1));
+                            Assert.assertEquals(1.0, ev.getData(2));
+                            break;
+                        case 3:
+                            Assert.assertEquals(2.0, ev.getData(1));
+                            Assert.assertEquals(5.0, ev.getData(2));
+                            break;
+                        case 4:
+                            Assert.assertEquals(1.0, ev.getData(1));
+                            Assert.assertEquals(7.0, ev.getData(2));
+                            break;
+                    }
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{"a", 5.0});
+        inputHandler.send(new Object[]{"b", 1.0});
+        inputHandler.send(new Object[]{"a", 2.0});
+        inputHandler.send(new Object[]{"b", 7.0});
+
+        Assert.assertEquals(4, count);
+        executionPlanRuntime.shutdown();
+    }
+}
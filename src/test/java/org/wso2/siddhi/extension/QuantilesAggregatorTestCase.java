@@ -0,0 +1,79 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+
+import java.util.Arrays;
+
+public class QuantilesAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(QuantilesAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("QuantilesAggregatorTestCase Double Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String inStreamDefinition = "define stream inputStream (tt double); " +
+                "define stream outputStream (tt object);";
+
+        String query = "@info(name = 'query1') " + "from inputStream#window.length(4) " +
+                "select stat:quantiles(tt, 0.0, 0.5, 1.0) as tt insert into filteredOutputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.
+                createExecutionPlanRuntime(inStreamDefinition + query);
+
+        final double[][] expected = {
+                {4.0, 4.0, 4.0},
+                {1.0, 2.5, 4.0},
+                {1.0, 3.0, 4.0},
+                {1.0, 2.5, 4.0},
+                {1.0, 2.5, 5.0}
+        };
+        executionPlanRuntime.addCallback("filteredOutputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    double[] quantiles = (double[]) ev.getData(0);
+                    Assert.assertTrue(Arrays.toString(quantiles), Arrays.equals(expected[count], quantiles));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{4.0});
+        inputHandler.send(new Object[]{1.0});
+        inputHandler.send(new Object[]{3.0});
+        inputHandler.send(new Object[]{2.0});
+        inputHandler.send(new Object[]{5.0});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+}
@@ -0,0 +1,154 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+import org.wso2.siddhi.core.ExecutionPlanRuntime;
+import org.wso2.siddhi.core.SiddhiManager;
+import org.wso2.siddhi.core.event.Event;
+import org.wso2.siddhi.core.stream.input.InputHandler;
+import org.wso2.siddhi.core.stream.output.StreamCallback;
+import org.wso2.siddhi.core.util.persistence.InMemoryPersistenceStore;
+
+public class WeightedMedianAggregatorTestCase {
+
+    private static final Logger log = Logger.getLogger(WeightedMedianAggregatorTestCase.class);
+    private int count = 0;
+
+
+    @org.junit.Test
+    public void Test1() throws InterruptedException {
+
+        log.info("WeightedMedianAggregatorTestCase Volume Weighted Sliding Length Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "define stream tradeStream (price double, quantity long); " +
+                "@info(name = 'query1') " + "from tradeStream#window.length(3) " +
+                "select stat:weightedMedian(price, quantity) as medianPrice insert into outputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+
+        final double[] expected = {10.0, 15.0, 20.0, 5.0, 5.0, 40.0};
+        executionPlanRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("tradeStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{10.0, 100L});
+        inputHandler.send(new Object[]{20.0, 100L});
+        inputHandler.send(new Object[]{30.0, 50L});
+        inputHandler.send(new Object[]{5.0, 400L});
+        inputHandler.send(new Object[]{25.0, 10L});
+        inputHandler.send(new Object[]{40.0, 1000L});
+
+        Assert.assertEquals(6, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test2() throws InterruptedException {
+
+        log.info("WeightedMedianAggregatorTestCase Restore Int Weighted Window TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+        siddhiManager.setPersistenceStore(new InMemoryPersistenceStore());
+
+
+        String executionPlan = "@plan:name('weightedMedianPersistence') " +
+                "define stream inputStream (value int, weight int); " +
+                "@info(name = 'query1') " + "from inputStream#window.length(3) " +
+                "select stat:weightedMedian(value, weight) as median insert into outputStream";
+        final double[] expected = {1.0, 2.0, 2.5, 3.0, 1.0};
+        StreamCallback callback = new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        };
+
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("outputStream", callback);
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{1, 1});
+        inputHandler.send(new Object[]{2, 3});
+        inputHandler.send(new Object[]{3, 4});
+        executionPlanRuntime.persist();
+        Thread.sleep(500);
+        executionPlanRuntime.shutdown();
+
+        executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+        executionPlanRuntime.addCallback("outputStream", callback);
+        inputHandler = executionPlanRuntime.getInputHandler("inputStream");
+        executionPlanRuntime.start();
+        executionPlanRuntime.restoreLastRevision();
+        inputHandler.send(new Object[]{4, 0});
+        inputHandler.send(new Object[]{1, 10});
+
+        Assert.assertEquals(5, count);
+        executionPlanRuntime.shutdown();
+    }
+
+    @org.junit.Test
+    public void Test3() throws InterruptedException {
+
+        log.info("WeightedMedianAggregatorTestCase Invalid Weights Left Out TestCase");
+        SiddhiManager siddhiManager = new SiddhiManager();
+
+
+        String executionPlan = "define stream tradeStream (price double, quantity double); " +
+                "@info(name = 'query1') " + "from tradeStream#window.length(2) " +
+                "select stat:weightedMedian(price, quantity) as medianPrice insert into outputStream";
+        ExecutionPlanRuntime executionPlanRuntime = siddhiManager.createExecutionPlanRuntime(executionPlan);
+
+        final double[] expected = {10.0, 10.0, 30.0, 35.0, 40.0, 0.0, 70.0};
+        executionPlanRuntime.addCallback("outputStream", new StreamCallback() {
+            @Override
+            public void receive(org.wso2.siddhi.core.event.Event[] events) {
+
+                for (Event ev : events) {
+                    Assert.assertEquals(expected[count], ev.getData(0));
+                    count++;
+                }
+            }
+        });
+
+        InputHandler inputHandler = executionPlanRuntime.getInputHandler("tradeStream");
+        executionPlanRuntime.start();
+        inputHandler.send(new Object[]{10.0, 1.0});
+        inputHandler.send(new Object[]{20.0, -5.0});
+        inputHandler.send(new Object[]{30.0, 1.0});
+        inputHandler.send(new Object[]{40.0, 1.0});
+        inputHandler.send(new Object[]{50.0, Double.NaN});
+        inputHandler.send(new Object[]{60.0, Double.POSITIVE_INFINITY});
+        inputHandler.send(new Object[]{70.0, 1.0});
+
+        Assert.assertEquals(7, count);
+        executionPlanRuntime.shutdown();
+    }
+}
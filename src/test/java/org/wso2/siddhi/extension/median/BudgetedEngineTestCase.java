@@ -0,0 +1,99 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BudgetedEngineTestCase {
+
+    private static final Logger log = Logger.getLogger(BudgetedEngineTestCase.class);
+
+    @org.junit.Test
+    public void Test1() {
+
+        log.info("BudgetedEngineTestCase Batch Engine Kept After Recovery TestCase");
+        BudgetedEngine engine = new BudgetedEngine(new BudgetedEngine.Factory() {
+            public MedianEngine create() {
+                return new SelectionBuffer(KeyCodec.LONG);
+            }
+        }, 4096, 0.01, "test", new MedianMetrics("batch", false));
+        // the buffer outgrows the budget at its 257th value, the values after it are kept exactly as well
+        List<Long> window = new ArrayList<Long>();
+        for (long i = 0; i < 500; i++) {
+            long key = i < 300 ? i : 1000 + i % 10;
+            engine.add(key);
+            window.add(key);
+        }
+        Assert.assertTrue(engine.isDegraded());
+        Assert.assertTrue(engine.active() instanceof LogHistogramSketch);
+
+        while (engine.isDegraded()) {
+            Assert.assertTrue(engine.remove(window.remove(0)));
+        }
+        Assert.assertFalse(window.isEmpty());
+        Assert.assertTrue(engine.active() instanceof SelectionBuffer);
+        Collections.sort(window);
+        Assert.assertEquals(median(window), engine.median(), 0.0);
+
+        for (long i = 0; i < 1000; i++) {
+            engine.add(i);
+        }
+        Assert.assertTrue(engine.isDegraded());
+        engine.clear();
+        Assert.assertTrue(engine.active() instanceof SelectionBuffer);
+        Assert.assertEquals(0, engine.size());
+    }
+
+    @org.junit.Test
+    public void Test2() {
+
+        log.info("BudgetedEngineTestCase Close And Restore Degraded Window TestCase");
+        BudgetedEngine.Factory factory = new BudgetedEngine.Factory() {
+            public MedianEngine create() {
+                return new CompactEngine(KeyCodec.LONG);
+            }
+        };
+        MedianMetrics metrics = new MedianMetrics("exact", false);
+        BudgetedEngine engine = new BudgetedEngine(factory, 4096, 0.01, "test", metrics);
+        for (long i = 0; i < 1000; i++) {
+            engine.add(i);
+        }
+        Assert.assertTrue(engine.isDegraded());
+        byte[] snapshot = engine.snapshot();
+        double median = engine.median();
+        engine.close();
+
+        BudgetedEngine restored = new BudgetedEngine(factory, 4096, 0.01, "test", metrics);
+        restored.restore(snapshot);
+        Assert.assertTrue(restored.isDegraded());
+        Assert.assertEquals(median, restored.median(), 0.0);
+        Assert.assertEquals(1000, restored.count());
+        restored.close();
+    }
+
+    private static double median(List<Long> sorted) {
+        int size = sorted.size();
+        if (size % 2 == 0) {
+            return (sorted.get(size / 2) + sorted.get(size / 2 - 1)) / 2.0;
+        }
+        return sorted.get(size / 2);
+    }
+}
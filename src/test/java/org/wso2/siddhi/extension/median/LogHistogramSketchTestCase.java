@@ -0,0 +1,62 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+
+public class LogHistogramSketchTestCase {
+
+    private static final Logger log = Logger.getLogger(LogHistogramSketchTestCase.class);
+
+    @org.junit.Test
+    public void Test1() {
+
+        log.info("LogHistogramSketchTestCase More Values Than An Int Counts TestCase");
+        double gamma = 1.01 / 0.99;
+        long ten = (long) Math.ceil(Math.log(10) / Math.log(gamma));
+        long hundred = (long) Math.ceil(Math.log(100) / Math.log(gamma));
+
+        // a sketch of 3 billion values around 10 and 1 billion around 100, written as a snapshot would
+        SnapshotOutput out = new SnapshotOutput(64);
+        out.writeByte(MedianEngine.SNAPSHOT_VERSION);
+        out.writeByte(MedianEngine.LOG_HISTOGRAM);
+        out.writeDouble(0.01);
+        out.writeVarLong(0);
+        out.writeVarLong(hundred - ten + 1);
+        out.writeSignedVarLong(ten);
+        out.writeVarLong(3000000000L);
+        for (long index = ten + 1; index < hundred; index++) {
+            out.writeVarLong(0);
+        }
+        out.writeVarLong(1000000000L);
+        out.writeVarLong(0);
+
+        LogHistogramSketch sketch = new LogHistogramSketch(KeyCodec.DOUBLE, 0.01);
+        sketch.restore(out.toByteArray());
+        Assert.assertEquals(4000000000L, sketch.count());
+        Assert.assertEquals(Integer.MAX_VALUE, sketch.size());
+        Assert.assertEquals(10.0, sketch.median(), 0.1);
+        Assert.assertEquals(10.0, sketch.quantile(0.7), 0.1);
+        Assert.assertEquals(100.0, sketch.quantile(0.8), 1.0);
+        Assert.assertEquals(0.0, sketch.medianAbsoluteDeviation(), 1e-9);
+
+        LogHistogramSketch restored = new LogHistogramSketch(KeyCodec.DOUBLE, 0.01);
+        restored.restore(sketch.snapshot());
+        Assert.assertEquals(4000000000L, restored.count());
+        Assert.assertEquals(sketch.median(), restored.median(), 0.0);
+    }
+}
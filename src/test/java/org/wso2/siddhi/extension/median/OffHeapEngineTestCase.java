@@ -0,0 +1,98 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class OffHeapEngineTestCase {
+
+    private static final Logger log = Logger.getLogger(OffHeapEngineTestCase.class);
+
+    @org.junit.Test
+    public void Test1() {
+
+        log.info("OffHeapEngineTestCase Free Without Cleaner TestCase");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        buffer.putLong(0, 42);
+        // without invokeCleaner the buffer is freed through its own cleaner where that is accessible, and
+        // otherwise left to the garbage collector, but never fails
+        OffHeapEngine.free(buffer, null);
+    }
+
+    @org.junit.Test
+    public void Test2() throws Exception {
+
+        log.info("OffHeapEngineTestCase Resume Incremental Checkpoints TestCase");
+        File directory = Files.createTempDirectory("median").toFile();
+        try {
+            File file = new File(directory, "window");
+            OffHeapEngine engine = new OffHeapEngine(KeyCodec.LONG, file);
+            for (long i = 0; i < 100000; i++) {
+                engine.add(i * 7 % 100003);
+            }
+            long first = engine.checkpoint();
+            for (long i = 0; i < 1000; i++) {
+                engine.remove(i * 7 % 100003);
+            }
+            long second = engine.checkpoint();
+            byte[] secondState = engine.snapshot();
+            engine.add(5);
+            long third = engine.checkpoint();
+            byte[] thirdState = engine.snapshot();
+            engine.add(6);
+
+            OffHeapEngine latest = new OffHeapEngine(KeyCodec.LONG, new File(directory, "latest"));
+            Assert.assertTrue(latest.resume(file, third));
+            Assert.assertTrue(Arrays.equals(thirdState, latest.snapshot()));
+            latest.close();
+
+            OffHeapEngine previous = new OffHeapEngine(KeyCodec.LONG, new File(directory, "previous"));
+            Assert.assertTrue(previous.resume(file, second));
+            Assert.assertTrue(Arrays.equals(secondState, previous.snapshot()));
+            previous.close();
+
+            // the checkpoint before the previous one has been overwritten
+            OffHeapEngine stale = new OffHeapEngine(KeyCodec.LONG, new File(directory, "stale"));
+            Assert.assertFalse(stale.resume(file, first));
+            stale.close();
+
+            engine.close();
+            engine = new OffHeapEngine(KeyCodec.LONG, file);
+            Assert.assertTrue(engine.resume(file, third));
+            Assert.assertTrue(Arrays.equals(thirdState, engine.snapshot()));
+            Assert.assertEquals(99001, engine.size());
+            engine.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
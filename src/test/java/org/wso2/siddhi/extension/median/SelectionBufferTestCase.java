@@ -0,0 +1,75 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+
+public class SelectionBufferTestCase {
+
+    private static final Logger log = Logger.getLogger(SelectionBufferTestCase.class);
+
+    @org.junit.Test
+    public void Test1() {
+
+        log.info("SelectionBufferTestCase Removal Outside The Window TestCase");
+        SelectionBuffer buffer = new SelectionBuffer(KeyCodec.LONG);
+        for (long i = 10; i <= 20; i++) {
+            buffer.add(i);
+        }
+        Assert.assertFalse(buffer.remove(9));
+        Assert.assertFalse(buffer.remove(21));
+        Assert.assertTrue(buffer.remove(10));
+        Assert.assertTrue(buffer.remove(11));
+        Assert.assertEquals(9, buffer.size());
+        Assert.assertEquals(16.0, buffer.median());
+        Assert.assertFalse(buffer.remove(11));
+    }
+
+    @org.junit.Test
+    public void Test2() {
+
+        log.info("SelectionBufferTestCase Removal Before Its Add TestCase");
+        SelectionBuffer buffer = new SelectionBuffer(KeyCodec.LONG);
+        buffer.add(1);
+        buffer.add(9);
+        Assert.assertTrue(buffer.remove(5));
+        Assert.assertEquals(2, buffer.size());
+        Assert.assertEquals(5.0, buffer.median());
+        buffer.add(5);
+        Assert.assertEquals(2, buffer.size());
+        Assert.assertEquals(5.0, buffer.median());
+        buffer.add(5);
+        Assert.assertEquals(3, buffer.size());
+        Assert.assertEquals(5.0, buffer.median());
+    }
+
+    @org.junit.Test
+    public void Test3() {
+
+        log.info("SelectionBufferTestCase Few Removals From An Unsorted Buffer TestCase");
+        SelectionBuffer buffer = new SelectionBuffer(KeyCodec.LONG);
+        for (long i = 0; i < 2000; i++) {
+            buffer.add((i * 7919) % 2000);
+        }
+        Assert.assertTrue(buffer.remove(0));
+        Assert.assertTrue(buffer.remove(1999));
+        Assert.assertTrue(buffer.remove(1000));
+        Assert.assertEquals(1997, buffer.size());
+        Assert.assertEquals(999.0, buffer.median());
+        Assert.assertEquals(500.0, buffer.quantile(0.25), 0.0);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+* Copyright (c) 2014, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.wso2.siddhi.extension.median;
+
+import junit.framework.Assert;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+
+public class WindowJournalTestCase {
+
+    private static final Logger log = Logger.getLogger(WindowJournalTestCase.class);
+
+    @org.junit.Test
+    public void Test1() {
+
+        log.info("WindowJournalTestCase Restore Without Base TestCase");
+        SelectionBuffer engine = new SelectionBuffer(KeyCodec.LONG);
+        WindowJournal journal = new WindowJournal();
+        for (long i = 0; i < 1000; i++) {
+            add(engine, journal, i);
+        }
+        WindowJournal.Checkpoint first = journal.checkpoint(engine);
+        Assert.assertEquals(0, first.segments(0).length);
+        for (long i = 0; i < 10; i++) {
+            add(engine, journal, 5000 + i);
+        }
+        WindowJournal.Checkpoint second = journal.checkpoint(engine);
+        Assert.assertSame(first, second);
+        byte[][] segments = second.segments(0);
+        Assert.assertEquals(1, segments.length);
+
+        // a state after the first one carries the token and the new segments only
+        SelectionBuffer restored = new SelectionBuffer(KeyCodec.LONG);
+        Assert.assertTrue(new WindowJournal().restore(restored, second.token, null, 0, segments));
+        Assert.assertTrue(Arrays.equals(engine.snapshot(), restored.snapshot()));
+
+        journal.close();
+        restored = new SelectionBuffer(KeyCodec.LONG);
+        Assert.assertTrue(new WindowJournal().restore(restored, second.token, null, 1, new byte[0][]));
+        Assert.assertTrue(Arrays.equals(engine.snapshot(), restored.snapshot()));
+    }
+
+    @org.junit.Test
+    public void Test2() {
+
+        log.info("WindowJournalTestCase Replaced Base TestCase");
+        SelectionBuffer engine = new SelectionBuffer(KeyCodec.LONG);
+        WindowJournal journal = new WindowJournal();
+        add(engine, journal, 1);
+        long first = journal.checkpoint(engine).token;
+        // each clear compacts the journal, and the next checkpoint takes a new base
+        engine.clear();
+        journal.cleared();
+        add(engine, journal, 2);
+        long second = journal.checkpoint(engine).token;
+        engine.clear();
+        journal.cleared();
+        add(engine, journal, 3);
+        journal.checkpoint(engine);
+
+        Assert.assertTrue(new WindowJournal().restore(new SelectionBuffer(KeyCodec.LONG), second, null, 0, null));
+        Assert.assertFalse(new WindowJournal().restore(new SelectionBuffer(KeyCodec.LONG), first, null, 0, null));
+    }
+
+    private static void add(MedianEngine engine, WindowJournal journal, long key) {
+        engine.add(key);
+        journal.added(key);
+    }
+}